@@ -0,0 +1,79 @@
+package gunslinger.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import gunslinger.sim.Gunslinger;
+
+// Benchmarks of the simulator hot paths
+// over a range of arena sizes and relationship settings
+//
+// Run with JMH on the class path, for example
+//  java -cp <classes>:<jmh jars> org.openjdk.jmh.Main gunslinger.bench
+//
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int nplayers;
+
+    @Param({"1", "4"})
+    public int nfriends;
+
+    @Param({"1", "4"})
+    public int nenemies;
+
+    // a game with every relationship in place
+    private Gunslinger game;
+    // friends for generating enemies
+    private int[][] friendship;
+    // a finished game to rank
+    private Gunslinger finished;
+    private long seed;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception
+    {
+        game = new Gunslinger(nenemies, nfriends, Players.create("ring", nplayers), seed++);
+        game.init();
+        friendship = game.genFriendship(nplayers, nfriends);
+
+        finished = new Gunslinger(nenemies, nfriends, Players.create("dumb", nplayers), seed++);
+        finished.init();
+        while (!finished.finished())
+            finished.playstep();
+    }
+
+    // one round with every player shooting through the view
+    // nobody dies, so every call costs the same
+    //
+    @Benchmark
+    public Gunslinger playstep()
+    {
+        game.playstep();
+        return game;
+    }
+
+    @Benchmark
+    public int[][] genFriendship()
+    {
+        return game.genFriendship(nplayers, nfriends);
+    }
+
+    @Benchmark
+    public int[][] genEnmityship()
+    {
+        return game.genEnmityship(nplayers, nenemies, friendship);
+    }
+
+    @Benchmark
+    public int[] rank()
+    {
+        return finished.rank();
+    }
+}
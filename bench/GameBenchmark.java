@@ -0,0 +1,45 @@
+package gunslinger.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import gunslinger.sim.Gunslinger;
+import gunslinger.sim.Player;
+
+// Benchmarks of whole games, from setup to ranking
+//
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int nplayers;
+
+    @Param({"1", "4"})
+    public int nfriends;
+
+    @Param({"1", "4"})
+    public int nenemies;
+
+    // dumb plays real games, arrayring measures the array adapter
+    @Param({"dumb", "arrayring"})
+    public String kind;
+
+    private long seed;
+
+    @Benchmark
+    public int[] game() throws Exception
+    {
+        Player[] players = Players.create(kind, nplayers);
+        Gunslinger game = new Gunslinger(nenemies, nfriends, players, seed++);
+        game.init();
+        while (!game.finished())
+            game.playstep();
+        game.computeScores();
+        return game.rank();
+    }
+}
@@ -0,0 +1,78 @@
+package gunslinger.bench;
+
+import gunslinger.sim.GameView;
+import gunslinger.sim.Player;
+
+// Synthetic players for the benchmarks
+//
+public class Players
+{
+    // Shoots the next living player around the circle
+    // every player takes at most one bullet, so nobody ever dies
+    // and rounds keep the same cost
+    //
+    public static class Ring extends Player
+    {
+        public String name()
+        {
+            return "ring";
+        }
+
+        public void init(int nplayers, int[] friends, int[] enemies)
+        {
+        }
+
+        public int shoot(GameView view)
+        {
+            int n = view.nplayers();
+            for (int i = (id + 1) % n; i != id; i = (i + 1) % n)
+                if (view.alive(i))
+                    return i;
+            return -1;
+        }
+    }
+
+    // The same as Ring through the array interface
+    // measures the cost of the copying adapter
+    //
+    public static class ArrayRing extends Player
+    {
+        public String name()
+        {
+            return "array ring";
+        }
+
+        public void init(int nplayers, int[] friends, int[] enemies)
+        {
+        }
+
+        public int shoot(int[] prevRound, boolean[] alive)
+        {
+            int n = alive.length;
+            for (int i = (id + 1) % n; i != id; i = (i + 1) % n)
+                if (alive[i])
+                    return i;
+            return -1;
+        }
+    }
+
+    // n players of the named kind: ring, array ring or dumb
+    //
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Player[] create(String kind, int n) throws Exception
+    {
+        Class<? extends Player> type;
+        if (kind.equals("ring"))
+            type = Ring.class;
+        else if (kind.equals("arrayring"))
+            type = ArrayRing.class;
+        else if (kind.equals("dumb"))
+            type = gunslinger.dumb.Player.class;
+        else
+            throw new IllegalArgumentException("Unknown player kind " + kind);
+
+        Class<? extends Player>[] classes = new Class[n];
+        java.util.Arrays.fill(classes, type);
+        return gunslinger.sim.Gunslinger.newPlayers(classes);
+    }
+}
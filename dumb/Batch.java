@@ -0,0 +1,103 @@
+package gunslinger.dumb;
+
+import java.util.*;
+
+import gunslinger.sim.GameView;
+
+// The dumb strategy for many gunslingers at once
+// Extends gunslinger.sim.BatchPlayer to control a set of agents
+//
+public class Batch extends gunslinger.sim.BatchPlayer
+{
+    // A simple fixed shoot rate strategy used by the dumb player
+    private static double ShootRate = 0.8;
+
+    // name of the team
+    //
+    public String name()
+    {
+        return "dumb batch";
+    }
+
+    // Initialize the batch
+    //
+    public void init(int nplayers, int[] ids, int[] friendStart, int[] friends,
+                     int[] enemyStart, int[] enemies, long seed)
+    {
+        gen = new Random(seed);
+        this.friendStart = friendStart;
+        this.friends = friends;
+    }
+
+    // Pick targets for all agents
+    //
+    public void shoot(GameView view, int[] ids, int[] targets)
+    {
+        int n = view.nplayers();
+
+        // the living players, once for all agents
+        if (living == null || living.length < n)
+            living = new int[n];
+        nliving = 0;
+        for (int i = 0; i != n; ++i)
+            if (view.alive(i))
+                living[nliving++] = i;
+
+        for (int k = 0; k != ids.length; ++k) {
+            int id = ids[k];
+            if (!view.alive(id))
+                continue;
+
+            // Shoot or not in this round?
+            if (gen.nextDouble() >= ShootRate)
+                continue;
+
+            targets[k] = randomTarget(k, id);
+        }
+    }
+
+    // a random living player that is neither agent k nor its friend
+    // Note:
+    //  Drawing from the living and drawing again on a friend is as fair
+    //  as going through all of them, and costs only a few draws while
+    //  friends are a small part of the living
+    //
+    private int randomTarget(int k, int id)
+    {
+        for (int tries = 0; tries != 8; ++tries) {
+            int i = living[gen.nextInt(nliving)];
+            if (i != id && !isFriend(k, i))
+                return i;
+        }
+
+        // mostly friends left, count them out
+        int count = 0;
+        for (int j = 0; j != nliving; ++j)
+            if (living[j] != id && !isFriend(k, living[j]))
+                count++;
+        if (count == 0)
+            return -1;
+        int pick = gen.nextInt(count);
+        for (int j = 0; j != nliving; ++j)
+            if (living[j] != id && !isFriend(k, living[j]) && pick-- == 0)
+                return living[j];
+        return -1;
+    }
+
+    // is player i a friend of agent k?
+    //
+    private boolean isFriend(int k, int i)
+    {
+        for (int f = friendStart[k]; f != friendStart[k+1]; ++f)
+            if (friends[f] == i)
+                return true;
+        return false;
+    }
+
+    private Random gen;
+    private int[] friendStart;
+    private int[] friends;
+    // ids of the living players this round, the first nliving entries
+    private int[] living;
+    private int nliving;
+}
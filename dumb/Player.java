@@ -2,24 +2,24 @@ package gunslinger.dumb;
 
 import java.util.*;
 
+import gunslinger.sim.GameView;
+import gunslinger.sim.Tactics;
+
 // An example player
 // Extends gunslinger.sim.Player to start with your player
 //
 public class Player extends gunslinger.sim.Player
 {
-    // total versions of the same player
-    private static int versions = 0;
-    // my version no
-    private int version = versions++;
-    
     // A simple fixed shoot rate strategy used by the dumb player
     private static double ShootRate = 0.8;
 
     // name of the team
+    // each game builds its own players, so copies are told apart
+    // by their slot in the player list, not by how many were made
     //
     public String name()
     {
-        return "dumb" + (versions > 1 ? " v" + version : "");
+        return "dumb v" + id;
     }
  
     // Initialize the player
@@ -27,29 +27,26 @@ public class Player extends gunslinger.sim.Player
     public void init(int nplayers, int[] friends, int enemies[])
     {
         // Note:
-        //  Seed your random generator carefully
-        //  if you want to repeat the same random number sequence
-        //  pick your favourate seed number as the seed
-        //  Or you can simply use the clock time as your seed     
-        //       
-        gen = new Random(System.currentTimeMillis());
-        // long seed = 12345;
-        // gen = new Random(seed);
+        //  Seed your random generator with seed()
+        //  it is different for every player and every game
+        //  and the same game seed always gives the same sequence
+        //
+        gen = new Random(seed());
 
-        this.nplayers = nplayers;
-        this.friends = friends.clone();
-        this.enemies = enemies.clone();
+        // Note:
+        //  Tactics keeps friends and enemies as bitsets
+        //  and picks targets without allocating anything
+        //
+        tactics = new Tactics(id, nplayers, friends, enemies);
     }
 
     // Pick a target to shoot
     // Parameters:
-    //  prevRound - an array of previous shoots, prevRound[i] is the player that player i shot
-    //              -1 if player i did not shoot
-    //  alive - an array of player's status, true if the player is still alive in this round
+    //  view - the game: who is alive, who shot whom in the previous round
     // Return:
     //  int - the player id to shoot, return -1 if do not shoot anyone
     //
-    public int shoot(int[] prevRound, boolean[] alive)
+    public int shoot(GameView view)
     {
         /* Strategy used by the dumb player:
            Decide whether to shoot or not with a fixed shoot rate
@@ -61,18 +58,34 @@ public class Player extends gunslinger.sim.Player
         if (!shoot)
             return -1;
 
-        ArrayList<Integer> targets = new ArrayList<Integer>();
-        for (int i = 0; i != nplayers; ++i)
-            if (i != id && alive[i] && !Arrays.asList(friends).contains(i))
-                targets.add(i);
+        return tactics.randomTarget(view, gen);
+    }
+
+
+    // Tell the odds of shoot, so that the Solver can analyze the player
+    //
+    public boolean declareStrategy(GameView view, double[] odds)
+    {
+        int n = view.nplayers();
+
+        // the players shoot picks from, each as likely
+        int count = 0;
+        for (int i = 0; i != n; ++i)
+            if (i != id && view.alive(i) && !tactics.isFriend(i))
+                count++;
+        if (count == 0) {
+            odds[n] = 1;
+            return true;
+        }
 
-        int target = targets.get(gen.nextInt(targets.size()));
-        return target;
+        for (int i = 0; i != n; ++i)
+            if (i != id && view.alive(i) && !tactics.isFriend(i))
+                odds[i] = ShootRate / count;
+        odds[n] = 1 - ShootRate;
+        return true;
     }
 
 
     private Random gen;
-    private int nplayers;
-    private int[] friends;
-    private int[] enemies;
+    private Tactics tactics;
 }
@@ -0,0 +1,47 @@
+package gunslinger.sim;
+
+// The base class of a batch player
+// A batch player controls a whole set of gunslingers (its agents)
+// and picks the targets of all of them in one call. Agents share the
+// arena with ordinary players, the engine treats them alike otherwise.
+// Relationships and answers are flat primitive arrays, one entry per agent.
+// The shoot of a batch is called directly: it has no shoot timeout and
+// is not timed as a shoot, its time only shows up in the round phase
+// of the telemetry.
+// See dumb/Batch.java for an example
+//
+public abstract class BatchPlayer
+{
+    // name of group
+    //
+    public abstract String name();
+
+    // Initialize the batch
+    // Parameters:
+    //  nplayers - number of gunslingers in the arena
+    //  ids - ids of the agents, agent k is gunslinger ids[k]
+    //  friendStart, friends - the friends of agent k are
+    //              friends[friendStart[k]] .. friends[friendStart[k+1]-1]
+    //  enemyStart, enemies - the enemies of agent k, the same way
+    //  seed - seed of the batch's random stream for this game
+    //
+    public abstract void init(int nplayers, int[] ids, int[] friendStart, int[] friends,
+                              int[] enemyStart, int[] enemies, long seed);
+
+    // Pick a target for every agent
+    // Parameters:
+    //  view - the game, as every player sees it
+    //  ids - ids of the agents, the same as in init
+    //  targets - set targets[k] to the player agent k shoots, -1 for no shot
+    //            it comes filled with -1, entries of dead agents are ignored
+    //
+    public abstract void shoot(GameView view, int[] ids, int[] targets);
+
+    // Do the agents always pick the same targets in the same situation?
+    // See Player.isDeterministic
+    //
+    public boolean isDeterministic()
+    {
+        return false;
+    }
+}
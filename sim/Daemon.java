@@ -0,0 +1,113 @@
+package gunslinger.sim;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// A resident tournament server
+// It keeps compiled players and warmed up code between tournaments,
+// so a small tournament costs its games and nothing else. Jobs come
+// over a TCP socket on the loopback interface, one per connection:
+//
+//  <playerlist> <num of enemies> <num of friends> <games> <seed>
+//
+// in one line. Games of all jobs run on one shared pool of workers.
+// The answer streams back as the job goes: an estimate line per chunk
+// of games, then the ranking as Gunslinger prints it, then "done", or
+// a line starting with "error" if the job could not run.
+// For example: echo gunslinger/players.list 1 1 1000 42 | nc localhost 7000
+//
+public class Daemon
+{
+    // Daemon <port> <threads>
+    //
+    public static void main(String[] args) throws Exception
+    {
+        int port = 7000;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            if (args.length > 0)
+                port = Integer.parseInt(args[0]);
+            if (args.length > 1)
+                threads = Integer.parseInt(args[1]);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Usage: java Daemon <port> <threads>");
+            System.exit(1);
+        }
+
+        // nobody is there to step through the games
+        Gunslinger.trace = false;
+
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        final int nworkers = threads;
+        ExecutorService connections = Executors.newCachedThreadPool();
+
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        System.err.println("Daemon listening on " + server.getLocalSocketAddress() + " with " + threads + " workers");
+
+        while (true) {
+            final Socket socket = server.accept();
+            connections.execute(new Runnable() {
+                    public void run() {
+                        try (Socket s = socket) {
+                            serve(s, workers, nworkers);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                });
+        }
+    }
+
+    // run the job of one connection
+    //
+    private static void serve(Socket socket, ExecutorService workers, int nworkers) throws IOException
+    {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8");
+
+        String line = in.readLine();
+        if (line == null)
+            return;
+        System.err.println("Job: " + line);
+
+        try {
+            String[] job = line.trim().split("\\s+");
+            if (job.length != 5)
+                throw new IllegalArgumentException("expected <playerlist> <num of enemies> <num of friends> <games> <seed>");
+            String playerPath = job[0];
+            int nenemies = Integer.parseInt(job[1]);
+            int nfriends = Integer.parseInt(job[2]);
+            int games = Integer.parseInt(job[3]);
+            long seed = Long.parseLong(job[4]);
+
+            // classes of unchanged groups come from the loader's memory
+            Class<? extends Player>[] classes = Gunslinger.loadPlayers(playerPath);
+            if (classes == null)
+                throw new IllegalArgumentException("cannot load the players of " + playerPath);
+            Player[] players = Gunslinger.newPlayers(classes);
+            if (nenemies + nfriends >= players.length)
+                throw new IllegalArgumentException("Invalid parameters: e+f<N");
+
+            String[] names = new String[players.length];
+            for (int p = 0; p != players.length; ++p)
+                names[p] = players[p].name();
+
+            Tournament tournament = new Tournament(classes, nenemies, nfriends);
+            tournament.setQuiet(true);
+            tournament.setPool(workers);
+            out.println("Master seed: " + seed);
+            int[][] ranks = tournament.playUntil(0, games, nworkers, seed, names, out);
+
+            Gunslinger.printRanks(out, players, ranks);
+            out.println("done");
+        } catch (Exception e) {
+            e.printStackTrace();
+            out.println("error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package gunslinger.sim;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// The text log of games, written on a background thread
+// Games record their events into compact int batches,
+// the writer thread formats whole batches and writes them in bulk
+//
+public class EventLog implements Closeable
+{
+    // constructor, starts the writer thread
+    //
+    public EventLog(OutputStream out)
+    {
+        this.out = new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE);
+        writer = new Thread(new Runnable() {
+                public void run() {
+                    drain();
+                }
+            }, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // a listener that records one game into the log
+    // the listener is not thread safe, every game needs its own
+    //
+    public GameListener newGame()
+    {
+        return new Recorder();
+    }
+
+    // write everything recorded so far and stop the writer
+    //
+    public void close() throws IOException
+    {
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.flush();
+    }
+
+    // the writer thread: format and write batches until closed
+    //
+    private void drain()
+    {
+        StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+        try {
+            for (Batch batch = queue.take(); batch != END; batch = queue.take()) {
+                sb.setLength(0);
+                batch.format(sb);
+                out.append(sb);
+                // flush once the writer catches up
+                if (queue.isEmpty())
+                    out.flush();
+            }
+        } catch (InterruptedException e) {
+            // closing
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // hand a full batch to the writer
+    //
+    private void submit(Batch batch)
+    {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Event records of a batch:
+    //  ROUND_START round nalive ids...
+    //  SHOT round p target
+    //  VIOLATION round p target text
+    //  KILLED round p
+    //  ROUND_END round
+    //  TEXT text
+    // where text is an index into the batch's strings
+    //
+    private static final int ROUND_START = 0;
+    private static final int SHOT = 1;
+    private static final int VIOLATION = 2;
+    private static final int KILLED = 3;
+    private static final int ROUND_END = 4;
+    private static final int TEXT = 5;
+
+    private static class Batch
+    {
+        Batch(int capacity)
+        {
+            data = new int[capacity];
+        }
+
+        // format all records of the batch
+        //
+        void format(StringBuilder sb)
+        {
+            int i = 0;
+            while (i != size) {
+                switch (data[i]) {
+                case ROUND_START:
+                    sb.append("Alive players: ");
+                    for (int k = 0; k != data[i+2]; ++k)
+                        sb.append(data[i+3+k]).append("  ");
+                    sb.append('\n');
+                    i += 3 + data[i+2];
+                    break;
+                case SHOT:
+                    sb.append("Round ").append(data[i+1]).append(": ").append(data[i+2]);
+                    if (data[i+3] < 0)
+                        sb.append(" did not shoot\n");
+                    else
+                        sb.append(" shoots ").append(data[i+3]).append('\n');
+                    i += 4;
+                    break;
+                case VIOLATION:
+                    sb.append("Player ").append(data[i+2]);
+                    if (data[i+3] >= 0)
+                        sb.append(" attempted to shoot ").append(data[i+3]).append(" <validation fails>: ");
+                    else
+                        sb.append(" <violation>: ");
+                    sb.append(texts.get(data[i+4])).append('\n');
+                    i += 5;
+                    break;
+                case KILLED:
+                    sb.append("Round ").append(data[i+1]).append(": ").append(data[i+2]).append(" is killed\n");
+                    i += 3;
+                    break;
+                case ROUND_END:
+                    sb.append("-------------------------\n");
+                    i += 2;
+                    break;
+                case TEXT:
+                    sb.append(texts.get(data[i+1]));
+                    i += 2;
+                    break;
+                default:
+                    throw new IllegalStateException("Bad event record " + data[i]);
+                }
+            }
+        }
+
+        int[] data;
+        int size;
+        List<String> texts = new ArrayList<String>();
+    }
+
+    // records the events of one game
+    //
+    private class Recorder implements GameListener
+    {
+        public void roundStart(int round, boolean[] alive)
+        {
+            ensure(3 + alive.length);
+            int at = batch.size;
+            add(ROUND_START);
+            add(round);
+            add(0);
+            for (int p = 0; p != alive.length; ++p)
+                if (alive[p]) {
+                    add(p);
+                    batch.data[at+2]++;
+                }
+        }
+
+        public void shot(int round, int p, int target)
+        {
+            ensure(4);
+            add(SHOT);
+            add(round);
+            add(p);
+            add(target);
+        }
+
+        public void violation(int round, int p, int target, String reason)
+        {
+            ensure(5);
+            add(VIOLATION);
+            add(round);
+            add(p);
+            add(target);
+            add(text(reason));
+        }
+
+        public void killed(int round, int p)
+        {
+            ensure(3);
+            add(KILLED);
+            add(round);
+            add(p);
+        }
+
+        public void roundEnd(int round, int[] actions)
+        {
+            ensure(2);
+            add(ROUND_END);
+            add(round);
+
+            // hand over at least every FLUSH_NANOS
+            // so that slow games still show up in the log
+            long now = System.nanoTime();
+            if (now - lastFlush > FLUSH_NANOS)
+                flush();
+        }
+
+        public void gameEnd(int rounds, int[] scores)
+        {
+            flush();
+        }
+
+        public void message(String text)
+        {
+            ensure(2);
+            add(TEXT);
+            add(text(text));
+        }
+
+        public boolean reports()
+        {
+            return true;
+        }
+
+        private void add(int value)
+        {
+            batch.data[batch.size++] = value;
+        }
+
+        private int text(String text)
+        {
+            batch.texts.add(text);
+            return batch.texts.size() - 1;
+        }
+
+        // make room for a record of the given length
+        //
+        private void ensure(int length)
+        {
+            if (batch.size + length <= batch.data.length)
+                return;
+            if (batch.size > 0)
+                flush();
+            if (length > batch.data.length)
+                batch.data = new int[length];
+        }
+
+        private void flush()
+        {
+            lastFlush = System.nanoTime();
+            if (batch.size == 0)
+                return;
+            submit(batch);
+            batch = new Batch(BATCH_SIZE);
+        }
+
+        private Batch batch = new Batch(BATCH_SIZE);
+        private long lastFlush = System.nanoTime();
+    }
+
+    // ints per batch
+    private static final int BATCH_SIZE = 1 << 14;
+    // longest time events wait in an unfinished batch
+    private static final long FLUSH_NANOS = 100000000L;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // marks the end of the log
+    private static final Batch END = new Batch(0);
+
+    private final Writer out;
+    private final Thread writer;
+    // batches waiting for the writer, producers block when it is full
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(256);
+}
@@ -0,0 +1,71 @@
+package gunslinger.sim;
+
+import java.util.*;
+
+// Receives the events of a game as it is played
+// Arrays passed in belong to the engine and are only valid
+// during the call, copy them if you need them later
+//
+public interface GameListener
+{
+    // a listener that passes every event to all the given ones in order
+    // null ones are skipped, null if none is left
+    //
+    static GameListener of(GameListener... listeners)
+    {
+        List<GameListener> list = new ArrayList<GameListener>();
+        for (GameListener listener : listeners)
+            if (listener != null)
+                list.add(listener);
+        if (list.isEmpty())
+            return null;
+        if (list.size() == 1)
+            return list.get(0);
+        return new ListenerList(list.toArray(new GameListener[0]));
+    }
+
+    // the game is set up
+    //  names - name of each player
+    //  friendship, enmityship - friends and enemies of each player
+    //
+    default void gameStart(long seed, String[] names, int[][] friendship, int[][] enmityship) {}
+
+    // a round starts
+    //  alive - status of every player in this round
+    //
+    default void roundStart(int round, boolean[] alive) {}
+
+    // player p shot target, -1 if p did not shoot
+    //
+    default void shot(int round, int p, int target) {}
+
+    // player p broke the rules and its shot is dropped
+    //  target - the attempted target, -1 if there was none
+    //
+    default void violation(int round, int p, int target, String reason) {}
+
+    // player p got killed
+    //
+    default void killed(int round, int p) {}
+
+    // a round is over
+    //  actions - actions[i] is the player that player i shot, -1 if none
+    //
+    default void roundEnd(int round, int[] actions) {}
+
+    // the game is over after the given number of rounds
+    //
+    default void gameEnd(int rounds, int[] scores) {}
+
+    // a block of the text report of the game
+    //
+    default void message(String text) {}
+
+    // does the listener take care of the report and the violations?
+    // the engine prints them to stderr itself when none does
+    //
+    default boolean reports()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package gunslinger.sim;
+
+// A read-only view of the game that players decide from
+// The engine owns the view and reuses it every round,
+// so read it inside shoot and copy whatever you want to keep
+//
+public interface GameView
+{
+    // number of players
+    //
+    int nplayers();
+
+    // current round, the first round is 1
+    //
+    int round();
+
+    // true in the first round, when nobody has shot yet
+    //
+    boolean firstRound();
+
+    // the player that player i shot in the previous round
+    // -1 if player i did not shoot or in the first round
+    //
+    int previous(int i);
+
+    // true if player i is still alive in this round
+    //
+    boolean alive(int i);
+}
@@ -2,9 +2,10 @@ package gunslinger.sim;
 
 // general utilities
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.*;
-import javax.tools.*;
+import java.util.concurrent.*;
 
 // gui utilities
 import static java.awt.geom.AffineTransform.*;
@@ -18,28 +19,66 @@ import javax.swing.*;
 public class Gunslinger
 {
     // Default parameters
-    private static String ROOT_DIR = "gunslinger";
+    static String ROOT_DIR = "gunslinger";
     private static int DEFAULT_FRIENDS = 1;
     private static int DEFAULT_ENEMIES = 1;
     private static String DEFAULT_PLAYERLIST = "players.list";
     private static int DEFAULT_GAMES = 1;
+    private static int DEFAULT_THREADS = 1;
     
-    // recompile .class file?
-    private static boolean recompile = true;
+    // compile players from source? false uses .class files on the class path if there are any
+    static boolean recompile = true;
     
     // print more details?
     private static boolean verbose = true;
 
     // Step by step trace
-    private static boolean trace = true;
+    static boolean trace = true;
 
     // enable gui
     private static boolean gui = false;
+
+    // directory to record a replay file of every game in, -Dgunslinger.replay=<dir>
+    private static String replayDir = System.getProperty("gunslinger.replay");
+
+    // time a player gets for each shoot in ms, 0 for no limit, -Dgunslinger.timeout=<ms>
+    private static long shootTimeout = Long.getLong("gunslinger.timeout", 0);
+
+    // a player that runs out of time only skips the round instead of
+    // being disabled for the rest of the game, -Dgunslinger.timeoutSkip=true
+    private static boolean timeoutSkip = Boolean.getBoolean("gunslinger.timeoutSkip");
+
+    // ask all players of a round at once on shooter threads, -Dgunslinger.concurrent=true
+    private static boolean concurrentShoot = Boolean.getBoolean("gunslinger.concurrent");
+
+    // keep playing until every player's mean rank is known to within this
+    // width at 95% confidence, <games> is then the most games to play,
+    // 0 to always play <games>, -Dgunslinger.ci=<width>
+    private static double rankWidth = Double.parseDouble(System.getProperty("gunslinger.ci", "0"));
+
+    // play only the games from..to-1 of the tournament and write their
+    // partial result for Merge, -Dgunslinger.shard=<from>-<to>
+    // to -Dgunslinger.partial=<file>, shard-<from>-<to>.gsp by default;
+    // the master seed must be given, all shards play the games of one
+    private static String shard = System.getProperty("gunslinger.shard");
+
+    // rounds per second the gui shows when playing on its own, -Dgunslinger.fps=<n>
+    private static int framesPerSecond = Integer.getInteger("gunslinger.fps", 4);
+
+    // file to append the result of every game to, checkpointed next to it
+    // in <file>.ckpt, a run with the same settings resumes from there,
+    // with the file's master seed unless another one is given,
+    // -Dgunslinger.results=<file>
+    private static String resultsFile = System.getProperty("gunslinger.results");
+
+    // start a result file over when it holds another tournament,
+    // -Dgunslinger.overwrite=true
+    private static boolean overwriteResults = Boolean.getBoolean("gunslinger.overwrite");
     
 	// list files below a certain directory
 	// can filter those having a specific extension constraint
     //
-	private static List <File> directoryFiles(String path, String extension) {
+	static List <File> directoryFiles(String path, String extension) {
 		List <File> allFiles = new ArrayList <File> ();
 		allFiles.add(new File(path));
 		int index = 0;
@@ -56,77 +95,75 @@ public class Gunslinger
 		return allFiles;
 	}
 
-  	// compile and load players dynamically
+  	// compile and load player classes dynamically
+    // see PlayerLoader for how groups are compiled and cached
     //
-	private static Player[] loadPlayers(String txtPath) {
-		// list of players
-		List <Player> playersList = new LinkedList <Player> ();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+	static Class<? extends Player>[] loadPlayers(String txtPath) {
+		// list of groups
+		List <String> groups = new ArrayList <String> ();
 
         try {
             // get file of players
             BufferedReader in = new BufferedReader(new FileReader(new File(txtPath)));
-            // get tools
-            ClassLoader loader = Gunslinger.class.getClassLoader();
-            if (loader == null) throw new Exception("Cannot load class loader");
-            JavaCompiler compiler = null;
-            StandardJavaFileManager fileManager = null;
-            // get separator
-            String sep = File.separator;
-            // load players
             String group;
-            while ((group = in.readLine()) != null) {
-                // add a small delay to avoid random seed collision
-                Thread.sleep(5);
-                
-                System.err.println("Group: " + group);
-                // search for compiled files
-                File classFile = new File(ROOT_DIR + sep + group + sep + "Player.class");
-                System.err.println(classFile.getAbsolutePath());
-                if (!classFile.exists() || recompile) {
-                    // delete all class files
-                    List <File> classFiles = directoryFiles(ROOT_DIR + sep + group, ".class");
-                    System.err.print("Deleting " + classFiles.size() + " class files...   ");
-                    for (File file : classFiles)
-                        file.delete();
-                    System.err.println("OK");
-                    if (compiler == null) compiler = ToolProvider.getSystemJavaCompiler();
-                    if (compiler == null) throw new Exception("Cannot load compiler");
-                    if (fileManager == null) fileManager = compiler.getStandardFileManager(null, null, null);
-                    if (fileManager == null) throw new Exception("Cannot load file manager");
-                    // compile all files
-                    List <File> javaFiles = directoryFiles(ROOT_DIR + sep + group, ".java");
-                    System.err.print("Compiling " + javaFiles.size() + " source files...   ");
-                    Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(javaFiles);
-                    boolean ok = compiler.getTask(null, fileManager, null, null, null, units).call();
-                    if (!ok) throw new Exception("Compile error");
-                    System.err.println("OK");
-                }
-                // load class
-                System.err.print("Loading player class...   ");
-                Class playerClass = loader.loadClass(ROOT_DIR + "." + group + ".Player");
-                System.err.println("OK");
-                // set name of player and append on list
-                Player player = (Player) playerClass.newInstance();
-                if (player == null)
-                    throw new Exception("Load error");
-                playersList.add(player);
-            }
+            while ((group = in.readLine()) != null)
+                groups.add(group);
             in.close();
+
+            Telemetry.LoadEvent event = new Telemetry.LoadEvent();
+            event.begin();
+            long start = Telemetry.start();
+
+            PlayerLoader loader = new PlayerLoader(ROOT_DIR, recompile);
+            Class<? extends Player>[] classes = loader.load(groups).toArray(new Class[0]);
+
+            Telemetry.stop(Telemetry.Phase.LOAD, start);
+            event.groups = groups.size();
+            event.commit();
+            return classes;
         } catch (Exception e) {
             e.printStackTrace(System.err);
             return null;
         }
-
-		return playersList.toArray(new Player[0]);
 	}
 
+    // create a fresh set of players, one per class, with ids 0..n-1
+    //
+    public static Player[] newPlayers(Class<? extends Player>[] classes) throws Exception
+    {
+        Player.resetIds();
+        Player[] players = new Player[classes.length];
+        for (int p = 0; p != classes.length; ++p) {
+            // each player in a host process, -Dgunslinger.isolate=<processes per group>
+            if (RemotePlayer.PROCESSES > 0)
+                players[p] = new RemotePlayer(classes[p]);
+            else
+                players[p] = classes[p].getDeclaredConstructor().newInstance();
+        }
+        return players;
+    }
+
+    // the game is over, let go of the players
+    //
+    void release()
+    {
+        for (int p = 0; p != nplayers; ++p)
+            if (players[p] != null)
+                players[p].release();
+    }
+
 
     
-    // Gunslinger <playerlist> <num of enermies> <num of friends> <gui> <recompile> <verbose> <trace> <games>
+    // Gunslinger <playerlist> <num of enermies> <num of friends> <gui> <recompile> <verbose> <trace> <games> <threads> <seed>
     //
 	public static void main(String[] args) throws Exception
 	{
         int games = DEFAULT_GAMES;
+        int threads = DEFAULT_THREADS;
+        // a random master seed unless one is given
+        long seed = ThreadLocalRandom.current().nextLong();
+        boolean seedGiven = false;
         int nenemies = 0, nfriends = 0;
         String playerPath = null;
 
@@ -169,104 +206,343 @@ public class Gunslinger
             // turns
             if (args.length > 7)
                 games = Integer.parseInt(args[7]);
+
+            // worker threads
+            if (args.length > 8)
+                threads = Integer.parseInt(args[8]);
+
+            // master seed
+            if (args.length > 9) {
+                seed = Long.parseLong(args[9]);
+                seedGiven = true;
+            }
         } catch (Exception e) {
             e.printStackTrace();
-            System.err.println("Usage: java Gunslinger <playerlist> <num of enermies> <num of friends> <gui> <recompile> <verbose> <trace> <games>");
+            System.err.println("Usage: java Gunslinger <playerlist> <num of enermies> <num of friends> <gui> <recompile> <verbose> <trace> <games> <threads> <seed>");
             System.exit(1);
         }
             
         // load all the players
-        Player[] players = loadPlayers(playerPath);
+        Class<? extends Player>[] classes = loadPlayers(playerPath);
+        if (classes == null)
+            System.exit(1);
+        Player[] players = newPlayers(classes);
 
         // check parameters
         if (nenemies + nfriends >= players.length) {
             System.err.println("[Error] Invalid parameters: e+f<N");
             System.exit(1);
         }
+        if (threads < 1 || (threads > 1 && trace && !gui)) {
+            System.err.println("[Error] Invalid parameters: threads>=1, trace needs a single thread");
+            System.exit(1);
+        }
+        int shardFrom = 0, shardTo = 0;
+        if (shard != null) {
+            if (resultsFile != null || rankWidth > 0) {
+                System.err.println("[Error] Invalid parameters: a shard has a fixed range of games");
+                System.exit(1);
+            }
+            // shards only add up when they play the games of one master seed
+            if (!seedGiven) {
+                System.err.println("[Error] Invalid parameters: a shard needs the master seed of its tournament");
+                System.exit(1);
+            }
+            boolean valid = false;
+            int dash = shard.indexOf('-');
+            if (dash > 0) {
+                try {
+                    shardFrom = Integer.parseInt(shard.substring(0, dash).trim());
+                    shardTo = Integer.parseInt(shard.substring(dash + 1).trim());
+                    valid = shardFrom >= 0 && shardFrom < shardTo;
+                } catch (NumberFormatException e) {
+                }
+            }
+            if (!valid) {
+                System.err.println("[Error] Invalid parameters: -Dgunslinger.shard=<from>-<to> with 0<=from<to, got " + shard);
+                System.exit(1);
+            }
+        }
+        // a result file goes on with the seed it was started with
+        if (resultsFile != null && !seedGiven && !overwriteResults) {
+            Long resumed = Results.seed(Paths.get(resultsFile));
+            if (resumed != null)
+                seed = resumed;
+        }
+        System.err.println("Master seed: " + seed);
+
+        // the round by round log
+        EventLog log = verbose ? new EventLog(System.err) : null;
 
         // play the game with gui
         // can only run one game
         if (gui) {
             // Create and initialize the game
-            Gunslinger game = new Gunslinger(nenemies, nfriends, players);
+            Gunslinger game = new Gunslinger(nenemies, nfriends, players, Tournament.gameSeed(seed, 0));
+            game.setListener(GameListener.of(log == null ? null : log.newGame(),
+                                             replayDir == null ? null : new ReplayWriter(Tournament.replayPath(replayDir, 0))));
             game.init();
             game.playgui();
         }
         else {
             // Aggregate results
-            int[][] ranks = new int[players.length][players.length];
-
-            for (int g = 0; g != games; ++g) {
-                // Create and initialize the game
-                Gunslinger game = new Gunslinger(nenemies, nfriends, players);
-                game.init();
-
-                game.printConfig();
-
-                game.play();
+            Tournament tournament = new Tournament(classes, nenemies, nfriends);
+            tournament.setLog(log);
+            tournament.setReplayDir(replayDir);
+            long start = Telemetry.start();
+            String[] names = new String[players.length];
+            for (int p = 0; p != players.length; ++p)
+                names[p] = players[p].name();
+            Results results = null;
+            if (resultsFile != null) {
+                try {
+                    results = Results.open(Paths.get(resultsFile), names, nenemies, nfriends, seed, overwriteResults);
+                } catch (IOException e) {
+                    System.err.println("[Error] " + e.getMessage());
+                    System.exit(1);
+                }
+                tournament.setResults(results);
+            }
 
-                int[] rank = game.rank();
-                for (int i = 0; i != rank.length; ++i)
-                    ranks[i][rank[i]]++;
+            int[][] ranks;
+            if (shard != null) {
+                ranks = tournament.play(shardFrom, shardTo, threads, seed);
+                String partial = System.getProperty("gunslinger.partial", "shard-" + shardFrom + "-" + shardTo + ".gsp");
+                new Partial(names, nenemies, nfriends, seed, shardFrom, shardTo, ranks, tournament.scoreSums()).write(Paths.get(partial));
             }
-            printRanks(players, ranks);
+            else if (rankWidth > 0 || results != null)
+                ranks = tournament.playUntil(rankWidth, games, threads, seed, names, System.err);
+            else
+                ranks = tournament.play(games, threads, seed);
+            if (results != null)
+                results.close();
+            Telemetry.stop(Telemetry.Phase.TOURNAMENT, start);
+            if (log != null)
+                log.close();
+            printRanks(System.err, players, ranks);
+
+            if (Telemetry.STATS)
+                writeStats(players);
         }
     }        
 
-    private void printConfig()
+    void printConfig()
     {
+        if (!textReport)
+            return;
+
         // print configuration
-        System.err.println("##### Configurations #####");
-        System.err.println("# players: " + players.length);
-        System.err.println("# friends/player: " + nfriends);
-        System.err.println("# enemies/player: " + nenemies);
-        printRelationship();
+        StringBuilder sb = new StringBuilder();
+        sb.append("##### Configurations #####\n");
+        sb.append("# seed: " + seed + "\n");
+        sb.append("# players: " + players.length + "\n");
+        sb.append("# friends/player: " + nfriends + "\n");
+        sb.append("# enemies/player: " + nenemies + "\n");
+        printRelationship(sb);
+        report(sb.toString());
+    }
+
+    // print a block of the game report
+    // it goes through the listener when one shows it,
+    // so that it stays in order with the round log
+    //
+    private void report(String text)
+    {
+        if (listener != null)
+            listener.message(text);
+        if (listener == null || !listener.reports())
+            System.err.print(text);
     }
     
-    private static void printRanks(Player[] players, int[][] ranks) {
-        System.err.println("##### Tournament ranking #####");
+    // write the timing summary where -Dgunslinger.stats points to
+    //
+    private static void writeStats(Player[] players) throws IOException
+    {
+        String[] names = new String[players.length];
+        for (int p = 0; p != players.length; ++p)
+            names[p] = players[p].name();
+        String summary = Telemetry.summary(names);
+
+        String target = System.getProperty("gunslinger.stats");
+        if (target.equals("-"))
+            System.out.print(summary);
+        else {
+            Writer out = new FileWriter(target);
+            out.write(summary);
+            out.close();
+        }
+    }
+
+    static void printRanks(PrintStream out, Player[] players, int[][] ranks) {
+        String[] names = new String[players.length];
+        for (int i = 0; i != players.length; ++i)
+            names[i] = players[i].name();
+        printRanks(out, names, ranks);
+    }
+
+    static void printRanks(PrintStream out, String[] names, int[][] ranks) {
+        out.println("##### Tournament ranking #####");
         
         // print header
-        System.err.printf("%8s", " ");
+        out.printf("%8s", " ");
         for (int i = 1; i <= ranks.length; ++i)
-            System.err.printf("%3d ", i);
-        System.err.println();
+            out.printf("%3d ", i);
+        out.println();
 
         for (int i = 0; i != ranks.length; ++i) {
-            System.err.printf("%8s", players[i].name()); 
+            out.printf("%8s", names[i]); 
             for (int j = 0; j != ranks.length; ++j) {
-                System.err.printf("%3d ", ranks[i][j]);
+                out.printf("%3d ", ranks[i][j]);
             }
-            System.err.println();
+            out.println();
         }
     }
 
     // constructor
     //
     public Gunslinger(int nenemies, int nfriends, Player[] players)
+    {
+        this(nenemies, nfriends, players, ThreadLocalRandom.current().nextLong());
+    }
+
+    // constructor for a reproducible game
+    //  seed - the game seed, every random choice of the game follows from it
+    //
+    public Gunslinger(int nenemies, int nfriends, Player[] players, long seed)
     {
         this.nenemies = nenemies;
         this.nfriends = nfriends;
         this.players = players;
+        this.seed = seed;
+    }
+
+    // constructor for an arena shared with batch players
+    //  players - ordinary players, they take ids 0..players.length-1
+    //  batches - batch players, batch b controls the next sizes[b] ids
+    //
+    public Gunslinger(int nenemies, int nfriends, Player[] players,
+                      BatchPlayer[] batches, int[] sizes, long seed)
+    {
+        this(nenemies, nfriends, arena(players, sizes), seed);
+        this.batches = batches;
+
+        batchIds = new int[batches.length][];
+        int next = players.length;
+        for (int b = 0; b != batches.length; ++b) {
+            batchIds[b] = new int[sizes[b]];
+            for (int k = 0; k != sizes[b]; ++k)
+                batchIds[b][k] = next++;
+        }
+    }
+
+    // the players of an arena, null where a batch agent stands
+    //
+    private static Player[] arena(Player[] players, int[] sizes)
+    {
+        int n = players.length;
+        for (int size : sizes)
+            n += size;
+        return Arrays.copyOf(players, n);
+    }
+
+    // constructor for watching a recorded game
+    // the players repeat the recorded shots
+    //
+    public Gunslinger(Replay replay)
+    {
+        this(replay.enemies(0).length, replay.friends(0).length, replay.players(), replay.seed());
+        this.replay = replay;
+    }
+
+    // attach a listener to the events of the game
+    // null to play without one
+    //
+    public void setListener(GameListener listener)
+    {
+        this.listener = listener;
+    }
+
+    // build the text report of the game, the configuration and the result?
+    // off when nobody reads it, the relationship table alone is n*n lines of work
+    //
+    void setReport(boolean report)
+    {
+        this.textReport = report;
     }
 
     // Initialize the game   
     //
-    private void init()
+    public void init()
     {
+        Telemetry.InitEvent event = new Telemetry.InitEvent();
+        event.begin();
+        long start = Telemetry.start();
+
         nplayers = players.length;
 
+        // split the game seed into the streams of the engine and the players
+        SplittableRandom root = new SplittableRandom(seed);
+        gen = new Random(root.nextLong());
+        for (int p = 0; p != nplayers; ++p)
+            if (players[p] != null)
+                players[p].seed = root.nextLong();
+        long[] batchSeeds = new long[batches.length];
+        for (int b = 0; b != batches.length; ++b)
+            batchSeeds[b] = root.nextLong();
+
         // generate relationships
-        relationship = new int[nplayers][nplayers];
-        friendship = genFriendship(nplayers, nfriends, relationship);
-        enmityship = genEnmityship(nplayers, nenemies, relationship);
+        if (replay == null) {
+            Telemetry.RelationsEvent relations = new Telemetry.RelationsEvent();
+            relations.begin();
+            long genStart = Telemetry.start();
+            friendship = genFriendship(nplayers, nfriends);
+            enmityship = genEnmityship(nplayers, nenemies, friendship);
+            Telemetry.stop(Telemetry.Phase.RELATIONS, genStart);
+            relations.nplayers = nplayers;
+            relations.nfriends = nfriends;
+            relations.nenemies = nenemies;
+            relations.commit();
+        }
+        // or take the recorded ones
+        else {
+            friendship = new int[nplayers][];
+            enmityship = new int[nplayers][];
+            for (int p = 0; p != nplayers; ++p) {
+                friendship[p] = replay.friends(p);
+                enmityship[p] = replay.enemies(p);
+            }
+        }
 
         // initialize the players
-        for (int p = 0; p != nplayers; ++p) {
-            try {
-                Thread.sleep(5);
-            } catch (Exception e) {}
-            players[p].init(nplayers, friendship[p].clone(), enmityship[p].clone());
+        for (int p = 0; p != nplayers; ++p)
+            if (players[p] != null)
+                players[p].init(nplayers, friendship[p].clone(), enmityship[p].clone());
+
+        deterministic = new boolean[nplayers];
+        for (int p = 0; p != nplayers; ++p)
+            if (players[p] != null)
+                deterministic[p] = players[p].isDeterministic();
+
+        // and the batch players, with the lists of all their agents end to end
+        batchTargets = new int[batches.length][];
+        for (int b = 0; b != batches.length; ++b) {
+            int[] ids = batchIds[b];
+            int[] friendStart = new int[ids.length + 1];
+            int[] enemyStart = new int[ids.length + 1];
+            for (int k = 0; k != ids.length; ++k) {
+                friendStart[k+1] = friendStart[k] + friendship[ids[k]].length;
+                enemyStart[k+1] = enemyStart[k] + enmityship[ids[k]].length;
+            }
+            int[] friends = new int[friendStart[ids.length]];
+            int[] enemies = new int[enemyStart[ids.length]];
+            for (int k = 0; k != ids.length; ++k) {
+                System.arraycopy(friendship[ids[k]], 0, friends, friendStart[k], friendship[ids[k]].length);
+                System.arraycopy(enmityship[ids[k]], 0, enemies, enemyStart[k], enmityship[ids[k]].length);
+            }
+            batches[b].init(nplayers, ids.clone(), friendStart, friends, enemyStart, enemies, batchSeeds[b]);
+            for (int q : ids)
+                deterministic[q] = batches[b].isDeterministic();
+            batchTargets[b] = new int[ids.length];
         }
 
         // initialize all players as alive
@@ -274,45 +550,83 @@ public class Gunslinger
         for (int p = 0; p != nplayers; ++p)
             alive[p] = true;
 
+        // everybody starts alive with all friends alive and no enemy dead
+        scores = new int[nplayers];
+        for (int p = 0; p != nplayers; ++p)
+            scores[p] = 1 + friendship[p].length;
+        enemyOf = invert(enmityship);
+
         // initialize violation to false
         violation = new boolean[nplayers];
 
+        // no shoot is running late
+        pending = new Future<?>[nplayers];
+
+        // answers of the players in a round
+        targets = new int[nplayers];
+        outcome = new int[nplayers];
+        failure = new Throwable[nplayers];
+        shots = new Future<?>[nplayers];
+
         // initialize current actions
         current = new int[nplayers];
-        
+
+        if (listener != null) {
+            String[] names = new String[nplayers];
+            for (int p = 0; p != nplayers; ++p)
+                names[p] = name(p);
+            listener.gameStart(seed, names, friendship, enmityship);
+        }
+
+        Telemetry.stop(Telemetry.Phase.INIT, start);
+        event.seed = seed;
+        event.nplayers = nplayers;
+        event.commit();
     }
 
     // generate friend relations
+    // every player befriends random players after it that still have room,
+    // sampled with a partial Fisher-Yates shuffle of those players,
+    // O(nplayers * nfriends) in total
     //
-    private int[][] genFriendship(int nplayers, int nfriends, int[][] relatinship)
+    public int[][] genFriendship(int nplayers, int nfriends)
     {
         int[][] friendship = new int[nplayers][nfriends];
         int[] curfriends  = new int[nplayers];
 
-        ArrayList<Integer> baselist = new ArrayList<Integer>();
-        for (int i = 0; i != nplayers; ++i)
-            baselist.add(i);
+        // players that can still take friends, in no particular order
+        // pos[q] is the index of q in open, -1 once q is taken out
+        int[] open = new int[nplayers];
+        int[] pos = new int[nplayers];
+        for (int i = 0; i != nplayers; ++i) {
+            open[i] = i;
+            pos[i] = i;
+        }
+        int nopen = nplayers;
 
         // randomly generate friends
-        for (int p = 0; p != nplayers - 1; ++p) {
+        for (int p = 0; p < nplayers - 1; ++p) {
+            // only players after p are left to pick from
+            if (pos[p] >= 0)
+                nopen = take(open, pos, nopen, p);
+
             // new friends to generate
-            int newfriends = nfriends - curfriends[p];
+            int newfriends = Math.min(nfriends - curfriends[p], nopen);
+
+            // move a random sample of the open players to the front
+            for (int i = 0; i != newfriends; ++i) {
+                int j = i + gen.nextInt(nopen - i);
+                int a = open[i], b = open[j];
+                open[i] = b;
+                open[j] = a;
+                pos[b] = i;
+                pos[a] = j;
+            }
+
+            for (int i = newfriends - 1; i >= 0; --i) {
+                int friend = open[i];
 
-            // generate a random permutation of following players
-            Integer[] permlist = baselist.subList(p+1,nplayers).toArray(new Integer[0]);
-            java.util.Collections.shuffle(Arrays.asList(permlist), gen);
-            
-            // pick top-k of the permuation
-            for (int i = 0; newfriends > 0 && i != permlist.length; ++i) {
-                int friend = permlist[i];
-                
-                // skip player that has already had enough friends
-                if (curfriends[friend] == nfriends)
-                    continue;
-                
                 // set friendship
-                relationship[p][friend] = 1;
-                relationship[friend][p] = 1;
                 friendship[p][curfriends[p]] = friend;
                 friendship[friend][curfriends[friend]] = p;
 
@@ -320,33 +634,86 @@ public class Gunslinger
                 curfriends[p]++;
                 curfriends[friend]++;
 
-                newfriends--;
+                // a player with enough friends leaves the pool
+                if (curfriends[friend] == nfriends)
+                    nopen = take(open, pos, nopen, friend);
             }
         }
 
         // assert curfriends[i] == nfriends
-        for (int p = 0; p != nplayers; ++p)
+        for (int p = 0; p != nplayers; ++p) {
             assert curfriends[p] == nfriends;
+            // the pairing can leave a player short, cut its list
+            if (curfriends[p] != nfriends)
+                friendship[p] = Arrays.copyOf(friendship[p], curfriends[p]);
+        }
 
         return friendship;
     }
 
+    // take player q out of the open pool of genFriendship
+    // Return:
+    //  int - the new size of the pool
+    //
+    private static int take(int[] open, int[] pos, int nopen, int q)
+    {
+        int last = open[nopen - 1];
+        open[pos[q]] = last;
+        pos[last] = pos[q];
+        pos[q] = -1;
+        return nopen - 1;
+    }
+
     // generate enemies
+    // every player picks random enemies among the players that are
+    // neither itself nor its friends, O(nplayers * (nfriends + nenemies))
     //
-    private int[][] genEnmityship(int nplayers, int nenemies, int[][] relationship)
+    public int[][] genEnmityship(int nplayers, int nenemies, int[][] friendship)
     {
         int[][] enmityship = new int[nplayers][nenemies];
-        
+
+        // mark[q] == p + 1 if p must not pick q
+        int[] mark = new int[nplayers];
+        // players p may pick, for crowded arenas
+        int[] candidates = null;
+
         for (int p = 0; p != nplayers; ++p) {
-            ArrayList<Integer> plist = new ArrayList<Integer>();
-            for (int i = 0; i != nplayers; ++i)
-                if (i != p && relationship[p][i] == 0)
-                    plist.add(i);
-            java.util.Collections.shuffle(plist);
-            
-            for (int e = 0; e != nenemies; ++e) {
-                relationship[p][plist.get(e)] = -1;
-                enmityship[p][e] = plist.get(e);
+            int stamp = p + 1;
+            mark[p] = stamp;
+            for (int f : friendship[p])
+                mark[f] = stamp;
+            int excluded = 1 + friendship[p].length;
+
+            if (2 * (excluded + nenemies) <= nplayers) {
+                // at least half of the players can be picked at any time,
+                // so drawing until we hit one takes at most two draws on average
+                for (int e = 0; e != nenemies; ++e) {
+                    int q;
+                    do {
+                        q = gen.nextInt(nplayers);
+                    } while (mark[q] == stamp);
+                    mark[q] = stamp;
+                    enmityship[p][e] = q;
+                }
+            }
+            else {
+                // nplayers is below 2 * (nfriends + nenemies + 1) here,
+                // so listing every candidate is as cheap as sampling
+                if (candidates == null)
+                    candidates = new int[nplayers];
+                int ncandidates = 0;
+                for (int i = 0; i != nplayers; ++i)
+                    if (mark[i] != stamp)
+                        candidates[ncandidates++] = i;
+
+                // partial Fisher-Yates shuffle for the first nenemies
+                for (int e = 0; e != nenemies; ++e) {
+                    int j = e + gen.nextInt(ncandidates - e);
+                    int q = candidates[j];
+                    candidates[j] = candidates[e];
+                    candidates[e] = q;
+                    enmityship[p][e] = q;
+                }
             }
         }            
         return enmityship;
@@ -358,16 +725,46 @@ public class Gunslinger
         private static final int ArrowSize = 10;
         private static final int ImageSize = 500;
         private static final int CanvasSize = 200;
-        private static final int PlayerSize = 40;
-        private final Color[] PlayerColors = {Color.BLUE, Color.CYAN,
-                                              Color.GREEN, Color.MAGENTA,
-                                              Color.ORANGE, Color.PINK,
-                                              Color.BLACK, Color.YELLOW,
-                                              Color.darkGray, Color.lightGray};
+        private static final int MaxPlayerSize = 40;
+        // up to this many players sit on a circle with arrows between them,
+        // more are drawn as a grid of cells with heatmaps instead
+        private static final int ArrowLimit = 50;
+        // where the layers go on the panel
+        private static final int PlayerX = 100, RelationX = 600, LayerY = 100;
+        // rounds kept for stepping back, the simulation runs up to half of it ahead
+        private static final int BufferRounds = 256;
 
         public GunslingerUI() {
+            compact = nplayers > ArrowLimit;
+            playerColors = palette(nplayers);
+
             // compute player positions
-            initPlayerPositions();
+            if (compact)
+                initGridPositions();
+            else
+                initPlayerPositions();
+
+            // the layers are allocated once and redrawn in place
+            // names are asked once, the players belong to the simulation thread
+            names = new String[nplayers];
+            for (int i = 0; i != nplayers; ++i)
+                names[i] = name(i);
+
+            // the game before the first round
+            buffer = new RoundBuffer(BufferRounds, BufferRounds / 2);
+            try {
+                buffer.put(frame(false));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+
+            // the layers are allocated once and redrawn in place
+            playerImg = newLayer();
+            actionImg = newLayer();
+            shownAlive = new boolean[nplayers];
+            shownScores = new int[nplayers];
+            hits = new int[nplayers];
+            drawPlayers(buffer.get(0).alive);
 
             // generate the relation graph in advance
             generateRelationGraph();
@@ -377,6 +774,31 @@ public class Gunslinger
             setBackground(Color.WHITE);
         }
 
+        // one colour per player, hues spread evenly around the colour wheel
+        //
+        private Color[] palette(int n) {
+            Color[] colors = new Color[n];
+            for (int i = 0; i != n; ++i)
+                // step by the golden ratio so that neighbours differ
+                colors[i] = Color.getHSBColor((float) ((i * 0.618033988749895) % 1.0), 0.8f, 0.85f);
+            return colors;
+        }
+
+        private BufferedImage newLayer() {
+            return new BufferedImage(ImageSize, ImageSize, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        // wipe a layer for drawing it again
+        //
+        private Graphics2D clear(BufferedImage layer) {
+            Graphics2D g = layer.createGraphics();
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, ImageSize, ImageSize);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            return g;
+        }
+
         // compute the positions of each player
         private void initPlayerPositions() {
             xx = new int[nplayers];
@@ -385,6 +807,8 @@ public class Gunslinger
             double y0 = CanvasSize;
 
             double offset = 2 * 3.14 / nplayers;
+            // players shrink so that they do not overlap
+            playerSize = Math.max(8, Math.min(MaxPlayerSize, (int) (CanvasSize * offset) - 4));
 
             for (int i = 0; i != nplayers; ++i) {
                 double angle = offset * i;
@@ -395,10 +819,25 @@ public class Gunslinger
             }
         }
 
+        // compute the cells of each player in the compact view
+        // players fill a square grid row by row
+        private void initGridPositions() {
+            xx = new int[nplayers];
+            yy = new int[nplayers];
+            int columns = (int) Math.ceil(Math.sqrt(nplayers));
+            int cell = ImageSize / columns;
+            playerSize = Math.max(1, cell - 1);
+
+            for (int i = 0; i != nplayers; ++i) {
+                xx[i] = (i % columns) * cell;
+                yy[i] = (i / columns) * cell;
+            }
+        }
+
         // draw an directed arrow from player i to player j
         //
         void drawArrow(Graphics g, int i, int j) {
-            int r = PlayerSize / 2;
+            int r = playerSize / 2;
             drawArrow(g, xx[i]+r, yy[i]+r, xx[j]+r, yy[j]+r);
         }
 
@@ -420,110 +859,222 @@ public class Gunslinger
             g.drawLine(smallOffset, 0, len-smallOffset, 0);
             g.fillPolygon(new int[] {len, len-ArrowSize, len-ArrowSize, len},
                           new int[] {0, -ArrowSize, ArrowSize, 0}, 4);
+            g.dispose();
+        }
+
+        // draw a player, grey once dead
+        //
+        private void drawPlayer(Graphics2D g, int i, Color c, String label) {
+            g.setColor(c);
+            if (compact)
+                g.fillRect(xx[i], yy[i], playerSize, playerSize);
+            else {
+                g.fillOval(xx[i], yy[i], playerSize, playerSize);
+                if (label != null)
+                    g.drawString(label, xx[i], yy[i]);
+            }
         }
 
-        // generate the player graph
+        // redraw the player layer if somebody died since the last time
+        // Return:
+        //  boolean - true if the layer changed
         //
-        void drawPlayers() {
-            playerImg = new BufferedImage(ImageSize, ImageSize, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = playerImg.createGraphics();
+        boolean drawPlayers(boolean[] alive) {
+            boolean changed = false;
+            for (int i = 0; i != nplayers; ++i)
+                if (shownAlive[i] != alive[i] || !playersDrawn) {
+                    changed = true;
+                    break;
+                }
+            if (!changed)
+                return false;
 
+            Graphics2D g = clear(playerImg);
             for (int i = 0; i != nplayers; ++i) {
-                String displayName = alive[i] ? players[i].name() : players[i].name() + "(R.I.P)";
-                Color c = alive[i] ? PlayerColors[i] : Color.GRAY;
-                g.setColor(c);
-                g.fillOval(xx[i], yy[i], PlayerSize, PlayerSize);
-                g.drawString(displayName, xx[i], yy[i]);
+                drawPlayer(g, i, alive[i] ? playerColors[i] : Color.GRAY,
+                           alive[i] ? names[i] : names[i] + "(R.I.P)");
+                shownAlive[i] = alive[i];
             }
+            g.dispose();
+            playersDrawn = true;
+            return true;
         }
 
 
         // generate the relation graph
+        // the compact view shows it as a heatmap instead: players are
+        // put into buckets, a cell is green for friendships and red for
+        // enmities between its buckets, brighter for more of them
         //
         void generateRelationGraph() {
-            relationImg = new BufferedImage(ImageSize, ImageSize, BufferedImage.TYPE_INT_ARGB);
+            relationImg = newLayer();
             Graphics2D g = relationImg.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+            if (compact) {
+                int buckets = Math.min(nplayers, ImageSize / 2);
+                int cell = ImageSize / buckets;
+                int[] friends = new int[buckets * buckets];
+                int[] enemies = new int[buckets * buckets];
+                for (int i = 0; i != nplayers; ++i) {
+                    int bi = (int) ((long) i * buckets / nplayers);
+                    for (int j : friendship[i])
+                        friends[bi * buckets + (int) ((long) j * buckets / nplayers)]++;
+                    for (int j : enmityship[i])
+                        enemies[bi * buckets + (int) ((long) j * buckets / nplayers)]++;
+                }
+                int most = 1;
+                for (int k = 0; k != friends.length; ++k)
+                    most = Math.max(most, Math.max(friends[k], enemies[k]));
+                for (int k = 0; k != friends.length; ++k)
+                    if (friends[k] + enemies[k] > 0) {
+                        g.setColor(new Color(255 * enemies[k] / most, 255 * friends[k] / most, 0));
+                        g.fillRect((k % buckets) * cell, (k / buckets) * cell, cell, cell);
+                    }
+                g.dispose();
+                return;
+            }
 
             // draw players
-            for (int i = 0; i != nplayers; ++i) {
-                g.setColor(PlayerColors[i]);
-                g.fillOval(xx[i], yy[i], PlayerSize, PlayerSize);
-                g.drawString(players[i].name(), xx[i], yy[i]);
-            }
+            for (int i = 0; i != nplayers; ++i)
+                drawPlayer(g, i, playerColors[i], names[i]);
             
             // draw friendship
             for (int i = 0; i != nplayers; ++i) {
-                for (int j = 0; j != nplayers; ++j) {
-                    if (relationship[i][j] == 0)
-                        continue;
-                    if (relationship[i][j] > 0)
-                        g.setColor(Color.GREEN);
-                    else if (relationship[i][j] < 0)
-                        g.setColor(Color.RED);
+                g.setColor(Color.GREEN);
+                for (int j : friendship[i])
+                    drawArrow(g, i, j);
+                g.setColor(Color.RED);
+                for (int j : enmityship[i])
                     drawArrow(g, i, j);
-                }
             }
+            g.dispose();
         }
         
         @Override
         public void paintComponent(Graphics g) {
             super.paintComponent(g);
 
-            drawPlayers();
-
-            g.drawImage(playerImg, 100, 100, null);
+            // only cached layers are drawn here
+            g.drawImage(playerImg, PlayerX, LayerY, null);
 
             if (showRelation)
-                g.drawImage(relationImg, 600, 100, null);
-
-            if (actionImg != null)
-                g.drawImage(actionImg, 100, 100, null);
+                g.drawImage(relationImg, RelationX, LayerY, null);
 
-            // if (scores != null)
-            //     showScores();
+            g.drawImage(actionImg, PlayerX, LayerY, null);
         }
         
-        // paint each step
+        // paint a round
+        // the compact view marks every player by the bullets it got,
+        // the more the redder
         //
-        private void drawStep() {
-            actionImg = new BufferedImage(ImageSize, ImageSize, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = actionImg.createGraphics();
-            g2.setColor(Color.RED);
-            for (int i = 0; i < nplayers; ++i) {
-                int target = current[i];
-                if (target >= 0)
-                    drawArrow(g2, i, target);
+        private void drawStep(RoundBuffer.Frame frame) {
+            drawPlayers(frame.alive);
+
+            Graphics2D g2 = clear(actionImg);
+            if (frame.actions != null && compact) {
+                Arrays.fill(hits, 0);
+                for (int i = 0; i < nplayers; ++i)
+                    if (frame.actions[i] >= 0)
+                        hits[frame.actions[i]]++;
+                for (int i = 0; i < nplayers; ++i)
+                    if (hits[i] > 0)
+                        drawPlayer(g2, i, new Color(255, 0, 0, Math.min(255, 120 * hits[i])), null);
             }
+            else if (frame.actions != null) {
+                g2.setColor(Color.RED);
+                for (int i = 0; i < nplayers; ++i) {
+                    int target = frame.actions[i];
+                    if (target >= 0)
+                        drawArrow(g2, i, target);
+                }
+            }
+            g2.dispose();
+
+            // only the game area changed
+            repaint(PlayerX, LayerY, ImageSize, ImageSize);
+        }
+
+        // show the round at the given distance from the one shown now
+        // nothing happens if it is not played yet or no longer kept
+        //
+        private void step(int rounds) {
+            RoundBuffer.Frame frame = buffer.get(shownRound + rounds);
+            if (frame == null)
+                return;
+
+            shownRound = frame.round;
+            buffer.show(shownRound);
+            drawStep(frame);
+            showScores(frame.scores);
+            roundLabel.setText("Round " + frame.round + (frame.last ? " (end)" : ""));
+
+            backButton.setEnabled(buffer.get(shownRound - 1) != null);
+            nextButton.setEnabled(!frame.last);
+            if (frame.last) {
+                timer.stop();
+                playButton.setText("Play");
+                playButton.setEnabled(false);
+            }
+        }
+
+        // the game as it is now
+        //
+        private RoundBuffer.Frame frame(boolean last) {
+            return new RoundBuffer.Frame(round, alive.clone(),
+                                         previous == null ? null : previous.clone(),
+                                         scores.clone(), last);
+        }
 
-            repaint();
+        // play the game on its own thread, one frame per round
+        // slow players hold up the frames, never the window
+        //
+        private void simulate() {
+            Thread simulation = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            while (!finished()) {
+                                playstep();
+                                boolean last = finished();
+                                if (last) {
+                                    // compute the scores
+                                    computeScores();
+                                    if (listener != null)
+                                        listener.gameEnd(round, scores);
+                                }
+                                buffer.put(frame(last));
+                            }
+                        } catch (InterruptedException e) {
+                            // the window is gone
+                        }
+                    }
+                }, "simulation");
+            simulation.setDaemon(true);
+            simulation.start();
         }
 
 
-        // Actions for buttons
+        // Actions for buttons and the autoplay timer
         //
         public void actionPerformed(ActionEvent e) {
-            if (e.getSource() == nextButton) {
-                // if the game continues
-                if (npeace != 10) {
-                    // play a single step
-                    playstep();
-                    // update the screen
-                    drawStep();
+            if (e.getSource() == nextButton || e.getSource() == timer)
+                step(1);
+            else if (e.getSource() == backButton)
+                step(-1);
+            else if (e.getSource() == playButton) {
+                if (timer.isRunning()) {
+                    timer.stop();
+                    playButton.setText("Play");
                 }
                 else {
-                    // compute the scores
-                    computeScores();
-                    showScores();
-
-                    // Disable the Next Button
-                    nextButton.setEnabled(false);
-                    
+                    timer.start();
+                    playButton.setText("Pause");
                 }
             }
-            else if (e.getSource() == showHideButton)
+            else if (e.getSource() == showHideButton) {
                 showRelation = !showRelation;
-
-            repaint();
+                repaint(RelationX, LayerY, ImageSize, ImageSize);
+            }
         }
 
         // entry point for the UI
@@ -538,13 +1089,25 @@ public class Gunslinger
             scoreboard = new JPanel();
             scoreboard.setBackground(Color.WHITE);
             scoreboard.setLayout(new BoxLayout(scoreboard, BoxLayout.PAGE_AXIS));
-            scoreboard.setPreferredSize(new Dimension(300, ImageSize));
-            scoreboard.setBounds(2 * ImageSize + 100, 0, 300, ImageSize);
 
             JLabel label = new JLabel("Player scores: ");
             label.setFont(new Font("Serif", Font.PLAIN, 28));
             scoreboard.add(label);
 
+            // one line per player, kept up to date as the game goes
+            // smaller type for many players, the board scrolls
+            int fontSize = nplayers > 20 ? 14 : 24;
+            scoreLabels = new JLabel[nplayers];
+            for (int i = 0; i != nplayers; ++i) {
+                scoreLabels[i] = new JLabel(names[i] + ": " + scores[i]);
+                scoreLabels[i].setFont(new Font("Serif", Font.PLAIN, fontSize));
+                scoreboard.add(scoreLabels[i]);
+                shownScores[i] = scores[i];
+            }
+            JScrollPane scroller = new JScrollPane(scoreboard);
+            scroller.setBorder(null);
+            scroller.setBounds(2 * ImageSize + 100, 0, 300, ImageSize);
+
             nextButton = new JButton("Next"); 
             nextButton.addActionListener(this);
             nextButton.setBounds(0, 0, 100, 50);
@@ -553,41 +1116,81 @@ public class Gunslinger
             showHideButton.addActionListener(this);
             showHideButton.setBounds(100, 0, 150, 50);
 
+            backButton = new JButton("Back");
+            backButton.addActionListener(this);
+            backButton.setBounds(250, 0, 100, 50);
+            backButton.setEnabled(false);
+
+            playButton = new JButton("Play");
+            playButton.addActionListener(this);
+            playButton.setBounds(350, 0, 100, 50);
+
+            roundLabel = new JLabel("Round 0");
+            roundLabel.setBounds(470, 0, 200, 50);
+
+            // autoplay shows the next round, if it is ready, this often
+            timer = new javax.swing.Timer(1000 / Math.max(1, framesPerSecond), this);
+
             this.add(nextButton);
             this.add(showHideButton);
-            this.add(scoreboard);
+            this.add(backButton);
+            this.add(playButton);
+            this.add(roundLabel);
+            this.add(scroller);
 
             mainFrame.add(this);
 
             mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             mainFrame.pack();
             mainFrame.setVisible(true);
+
+            simulate();
         }
 
         // update the score on the scoreboard
-        private void showScores()
+        // only the labels whose score changed
+        private void showScores(int[] scores)
         {
-            assert scores != null;
-
-            for (int i = 0; i != nplayers; ++i) {
-                JLabel label = new JLabel(players[i].name() + ": " + scores[i]);
-                label.setFont(new Font("Serif", Font.PLAIN, 24));
-                scoreboard.add(label);
-            }
-            scoreboard.updateUI();
+            for (int i = 0; i != nplayers; ++i)
+                if (shownScores[i] != scores[i]) {
+                    scoreLabels[i].setText(names[i] + ": " + scores[i]);
+                    shownScores[i] = scores[i];
+                }
         }
         
         // display position of each player
         private int[] xx;
         private int[] yy;
-
+        private int playerSize;
+        // grid and heatmaps instead of circle and arrows
+        private boolean compact;
+        private Color[] playerColors;
+        private String[] names;
+
+        // rounds played by the simulation thread, and the one shown
+        private RoundBuffer buffer;
+        private int shownRound = 0;
+        private javax.swing.Timer timer;
+
+        // the layers, allocated once
         private BufferedImage playerImg;
         private BufferedImage relationImg;
         private BufferedImage actionImg;
+        private boolean playersDrawn;
+        // what the player layer and the scoreboard show now
+        private boolean[] shownAlive;
+        private int[] shownScores;
+        // bullets each player got in the round shown
+        private int[] hits;
+
         private JFrame mainFrame;
         private JButton nextButton;
         private JButton showHideButton;
+        private JButton backButton;
+        private JButton playButton;
+        private JLabel roundLabel;
         private JPanel scoreboard;
+        private JLabel[] scoreLabels;
 
         private boolean showRelation;
     }
@@ -595,103 +1198,317 @@ public class Gunslinger
 
     // Play a single step
     //
-    private void playstep()
+    public void playstep()
     {
+        Telemetry.RoundEvent event = new Telemetry.RoundEvent();
+        event.begin();
+        long start = Telemetry.start();
+
         round++;
 
         // anyone is killed in this round?
         boolean killed = false;            
+        // anyone stops shooting for good in this round?
+        boolean disabled = false;
         // bullets each player got
         int[] bullets = new int[nplayers];
             
-        // reset shoots
-        for (int i = 0; i != nplayers; ++i)
-            current[i] = -1;
-
-        // print who is alive
-        if (verbose) {
-            System.err.print("Alive players: ");
-            for (int p = 0; p != players.length; ++p)
-                if (alive[p])
-                    System.err.print(p + "  ");
-            System.err.println();
-        }
-
+        if (listener != null)
+            listener.roundStart(round, alive);
             
+        // ask every living player for a target
+        // every player sees the same read-only view of the previous round
+        decide();
+
         for (int p = 0; p != players.length; ++p) {
             // initialize the player's action to shoot nothing
             current[p] = -1;
             
             // skip dead player or buggy player
-            if (!alive[p] || violation[p])
+            if (outcome[p] == IDLE)
                 continue;
 
-            // create a local copy of the previous info
-            // in case the player change the array
-            // for the first round, prev = null
-            int[] prev = previous == null ? null : previous.clone();
+            if (outcome[p] == LATE) {
+                // the player took too long, its shot does not count
+                if (!timeoutSkip) {
+                    violation[p] = true;
+                    disabled = true;
+                }
+                String msg = "Out of time after " + shootTimeout + " ms" + (timeoutSkip ? "" : ", no longer shoots thereafter");
+                if (listener != null)
+                    listener.violation(round, p, -1, msg);
+                if (listener == null || !listener.reports())
+                    System.err.println("Player " + p + ": " + msg);
+                continue;
+            }
 
-            // ask the player to shoot a target
-            int target = -1;
-            try {
-                target = players[p].shoot(prev, alive.clone());
-            } catch (Exception e) {
+            if (outcome[p] == FAILED) {
                 // Catch whatever exception the player throws
                 // invalidate the player
-                e.printStackTrace();
+                if (failure[p] != null)
+                    failure[p].printStackTrace();
                 violation[p] = true;
-                System.err.println("Player " + p + " has malfunctional gun, no longer shoots thereafter.");
+                disabled = true;
+                String msg = "Malfunctional gun, no longer shoots thereafter";
+                if (listener != null)
+                    listener.violation(round, p, -1, msg);
+                if (listener == null || !listener.reports())
+                    System.err.println("Player " + p + " has malfunctional gun, no longer shoots thereafter.");
+                continue;
             }
 
+            int target = targets[p];
             boolean valid = validate(p, target);
 
             if (valid) {
                 // the player stays
-                if (target < 0) {
+                if (target < 0)
                     current[p] = -1;
-                    if (verbose)
-                        System.err.println("Round " + round + ": " + p + " did not shoot");
-                }
                 // the player shoots
                 else {
                     bullets[target]++;
                     current[p] = target;
-                        
-                    if (verbose)
-                        System.err.println("Round " + round + ": " + p + " shoots " + target);
-
                 }
+                if (listener != null)
+                    listener.shot(round, p, current[p]);
             }
-            else
-                System.err.println("Player " + p + " shoots an invalid target.");
         }
-            
-        if (verbose)
-            System.err.println("-------------------------");
- 
+
         // update game stats
         for (int p = 0; p != nplayers; ++p) {
             if (alive[p] && bullets[p] > 1) {
                 alive[p] = false;
                 killed = true;
+                updateScores(p);
 
-                if (verbose)
-                    System.err.println("Round " + round +": " + p + " is killed");
+                if (listener != null)
+                    listener.killed(round, p);
             }
         }
+
+        if (listener != null)
+            listener.roundEnd(round, current);
             
         if (killed)
             npeace = 0;
         else
             npeace++;
 
+        // this round becomes the previous one
+        // reuse the old buffer for the next round
+        int[] last = previous;
         previous = current;
+        current = last == null ? new int[nplayers] : last;
+
+        // end the game early when the rest would change nothing
+        settled = !deathPossible() || repeated(killed || disabled);
+
+        Telemetry.stop(Telemetry.Phase.ROUND, start);
+        event.seed = seed;
+        event.round = round;
+        event.commit();
+    }
+
+    // Ask every living player for a target
+    // targets[p] holds the answer of player p when outcome[p] is SHOT
+    // Players are asked one by one, or all at once in concurrent mode,
+    // the outcome is the same because nobody sees the others' answers
+    //
+    private void decide()
+    {
+        for (int p = 0; p != nplayers; ++p) {
+            outcome[p] = IDLE;
+            failure[p] = null;
+            if (!alive[p] || violation[p])
+                continue;
+
+            // agents of batch players answer below
+            if (players[p] == null)
+                continue;
+
+            // the last call has not returned yet, never run two at once
+            if (pending[p] != null && !pending[p].isDone()) {
+                outcome[p] = LATE;
+                continue;
+            }
+            pending[p] = null;
+
+            if (concurrentShoot)
+                shots[p] = submit(p);
+            else if (shootTimeout > 0)
+                collect(p, submit(p), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shootTimeout));
+            else {
+                try {
+                    targets[p] = shoot(p);
+                    outcome[p] = SHOT;
+                } catch (Exception e) {
+                    failure[p] = e;
+                    outcome[p] = FAILED;
+                }
+            }
+        }
+
+        decideBatches();
+
+        if (concurrentShoot) {
+            // everybody started together, so everybody has the same deadline
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shootTimeout);
+            for (int p = 0; p != nplayers; ++p)
+                if (shots[p] != null) {
+                    collect(p, shots[p], deadline);
+                    shots[p] = null;
+                }
+        }
+    }
+
+    // Ask every batch player for the targets of its living agents
+    // a batch player that throws disables all of its agents
+    //
+    private void decideBatches()
+    {
+        for (int b = 0; b != batches.length; ++b) {
+            int[] ids = batchIds[b];
+
+            // anybody left to ask?
+            boolean active = false;
+            for (int q : ids)
+                if (alive[q] && !violation[q]) {
+                    active = true;
+                    break;
+                }
+            if (!active)
+                continue;
+
+            Arrays.fill(batchTargets[b], -1);
+            boolean failed = false;
+            try {
+                batches[b].shoot(view, ids, batchTargets[b]);
+            } catch (Exception e) {
+                // print it once for the whole batch
+                e.printStackTrace();
+                failed = true;
+            }
+
+            for (int k = 0; k != ids.length; ++k) {
+                int q = ids[k];
+                if (!alive[q] || violation[q])
+                    continue;
+                if (failed)
+                    outcome[q] = FAILED;
+                else {
+                    targets[q] = batchTargets[b][k];
+                    outcome[q] = SHOT;
+                }
+            }
+        }
+    }
+
+    // name of the player with id p
+    //
+    private String name(int p)
+    {
+        if (players[p] != null)
+            return players[p].name();
+        for (int b = 0; b != batches.length; ++b)
+            if (p >= batchIds[b][0] && p <= batchIds[b][batchIds[b].length - 1])
+                return batches[b].name() + " #" + (p - batchIds[b][0]);
+        return "?";
+    }
+
+    // run the shoot of player p on a shooter thread
+    //
+    private Future<Integer> submit(final int p)
+    {
+        return Shooters.pool().submit(new Callable<Integer>() {
+                public Integer call() {
+                    return shoot(p);
+                }
+            });
+    }
+
+    // ask player p for a target, timed for the telemetry
+    //
+    private int shoot(int p)
+    {
+        Telemetry.ShootEvent event = new Telemetry.ShootEvent();
+        event.begin();
+        long start = Telemetry.start();
+
+        int target = players[p].shoot(view);
+
+        Telemetry.stopShoot(p, start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = p;
+            event.name = players[p].name();
+            event.round = round;
+            event.target = target;
+            event.commit();
+        }
+        return target;
+    }
+
+    // wait for the shoot of player p
+    // give up on it at the deadline when there is a timeout
+    //
+    private void collect(int p, Future<?> shot, long deadline)
+    {
+        try {
+            if (shootTimeout > 0)
+                targets[p] = (Integer) shot.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            else
+                targets[p] = (Integer) shot.get();
+            outcome[p] = SHOT;
+        } catch (TimeoutException e) {
+            shot.cancel(true);
+            pending[p] = shot;
+            outcome[p] = LATE;
+        } catch (ExecutionException e) {
+            failure[p] = e.getCause();
+            outcome[p] = FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shot.cancel(true);
+            pending[p] = shot;
+            outcome[p] = LATE;
+        }
+    }
+
+    // The engine's view for players
+    // backed by the game arrays, nothing is copied
+    //
+    private class View implements GameView
+    {
+        public int nplayers()
+        {
+            return nplayers;
+        }
+
+        public int round()
+        {
+            return round;
+        }
+
+        public boolean firstRound()
+        {
+            return previous == null;
+        }
+
+        public int previous(int i)
+        {
+            return previous == null ? -1 : previous[i];
+        }
+
+        public boolean alive(int i)
+        {
+            return alive[i];
+        }
     }
 
 
     // play with gui
     //
-    private void playgui()
+    void playgui()
     {
         SwingUtilities.invokeLater(new Runnable() {
                 public void run() {
@@ -703,11 +1520,11 @@ public class Gunslinger
 
     // play with command line
     //
-    private void play() 
+    void play() 
     {
         Console console = System.console();
 
-        while (npeace < 10) {
+        while (!finished()) {
             // step by step trace
             if (trace) {
                 console.format("\nPress ENTER to proceed.\n");
@@ -720,6 +1537,9 @@ public class Gunslinger
         computeScores();
 
         printScores();
+
+        if (listener != null)
+            listener.gameEnd(round, scores);
     }
 
     
@@ -740,36 +1560,188 @@ public class Gunslinger
         else
             valid = true;
 
-        if (!valid)
-            System.err.println("Player " + p + " attempted to shoot " + target + " <validation fails>: " + msg);
+        if (!valid) {
+            if (listener != null)
+                listener.violation(round, p, target, msg);
+            if (listener == null || !listener.reports())
+                System.err.println("Player " + p + " attempted to shoot " + target + " <validation fails>: " + msg);
+        }
 
         return valid;
     }
 
+    // true once the game is over
+    //
+    public boolean finished()
+    {
+        return npeace >= 10 || settled;
+    }
+
+    // Can anybody still die?
+    // A death takes two bullets in the same player. Two shooters can
+    // only kill a third one, three or more can always kill one of them
+    // Players out of the game for a violation never shoot again
+    //
+    private boolean deathPossible()
+    {
+        int shooters = 0;
+        int nalive = 0;
+        for (int p = 0; p != nplayers; ++p)
+            if (alive[p]) {
+                nalive++;
+                if (!violation[p])
+                    shooters++;
+            }
+        return shooters >= 3 || (shooters == 2 && nalive >= 3);
+    }
+
+    // Has the game been in this situation since the last death?
+    // With deterministic players only, the same previous round and the
+    // same living players lead to the same rounds again, so the game
+    // goes around in a loop with nobody dying until npeace runs out
+    // Call it after previous holds the round just played
+    //  changed - somebody died or stopped shooting for good in the round
+    //
+    private boolean repeated(boolean changed)
+    {
+        // a death or a silenced gun changes the situation for good,
+        // rounds before it say nothing about the rounds after it
+        if (changed)
+            seenCount = 0;
+
+        // late answers depend on the clock
+        if (shootTimeout > 0)
+            return false;
+        for (int p = 0; p != nplayers; ++p)
+            if (alive[p] && !violation[p] && !deterministic[p])
+                return false;
+
+        long hash = 1;
+        for (int p = 0; p != nplayers; ++p)
+            hash = hash * 31 + previous[p];
+
+        for (int i = 0; i != seenCount; ++i)
+            if (seenHash[i] == hash && Arrays.equals(seen[i], previous))
+                return true;
+
+        // no more than 10 peaceful rounds to remember
+        if (seenCount == seen.length)
+            return false;
+        if (seen[seenCount] == null)
+            seen[seenCount] = new int[nplayers];
+        System.arraycopy(previous, 0, seen[seenCount], 0, nplayers);
+        seenHash[seenCount++] = hash;
+        return false;
+    }
+
+    // score of player p so far
+    // the final score once the game is finished
+    //
+    public int score(int p)
+    {
+        return scores[p];
+    }
+
+    // friends and enemies of player p, once the game is initialized
+    //
+    int[] friends(int p)
+    {
+        return friendship[p].clone();
+    }
+
+    int[] enemies(int p)
+    {
+        return enmityship[p].clone();
+    }
+
     // compute final scores
+    // the scores are kept up to date during play, so this only
+    // checks them when assertions are on; there is nothing to time
     //
-    private void computeScores()
+    public void computeScores()
     {
-        scores = new int[nplayers];
+        assert Arrays.equals(scores, countScores());
+    }
+
+    // score changes when player d dies
+    // touches only the friends of d and the players d is an enemy of
+    //
+    private void updateScores(int d)
+    {
+        // no longer alive
+        scores[d]--;
+        // friendship is mutual, the friends of d lose a living friend
+        for (int f : friendship[d])
+            scores[f]--;
+        // players with d as an enemy gain a dead enemy
+        for (int p : enemyOf[d])
+            scores[p]++;
+    }
+
+    // count the scores from scratch
+    //
+    private int[] countScores()
+    {
+        int[] counted = new int[nplayers];
 
         for (int p = 0; p != nplayers; ++p) {
             if (alive[p])
-                scores[p]++;
-            for (int i = 0; i != nplayers; ++i)
-                if ((relationship[p][i] > 0 && alive[i]) || 
-                    (relationship[p][i] < 0 && !alive[i]))
-                    scores[p]++;
+                counted[p]++;
+            for (int f : friendship[p])
+                if (alive[f])
+                    counted[p]++;
+            for (int e : enmityship[p])
+                if (!alive[e])
+                    counted[p]++;
         }            
+        return counted;
+    }
+
+    // reverse relationship lists
+    // Return:
+    //  int[][] - inverse[q] lists every p with q in lists[p]
+    //
+    private static int[][] invert(int[][] lists)
+    {
+        int[] count = new int[lists.length];
+        for (int[] list : lists)
+            for (int q : list)
+                count[q]++;
+
+        int[][] inverse = new int[lists.length][];
+        for (int q = 0; q != lists.length; ++q)
+            inverse[q] = new int[count[q]];
+
+        Arrays.fill(count, 0);
+        for (int p = 0; p != lists.length; ++p)
+            for (int q : lists[p])
+                inverse[q][count[q]++] = p;
+        return inverse;
     }
 
     // Print the relationshp matrix
+    // large arenas get the lists of friends and enemies instead
     //
-    private void printRelationship()
+    private void printRelationship(StringBuilder sb)
     {
+        if (nplayers > MAX_MATRIX) {
+            for (int i = 0; i != nplayers; ++i)
+                sb.append(i + ": friends " + Arrays.toString(friendship[i])
+                          + " enemies " + Arrays.toString(enmityship[i]) + "\n");
+            return;
+        }
+
+        // one row of the matrix at a time
+        int[] row = new int[nplayers];
         for (int i = 0; i != nplayers; ++i) {
+            Arrays.fill(row, 0);
+            for (int f : friendship[i])
+                row[f] = 1;
+            for (int e : enmityship[i])
+                row[e] = -1;
             for (int j = 0; j != nplayers; ++j)
-                System.err.printf("%4d", relationship[i][j]);
-            System.err.println();
+                sb.append(String.format("%4d", row[j]));
+            sb.append('\n');
         }
     }
 
@@ -777,94 +1749,145 @@ public class Gunslinger
     //
     private void printScores()
     {
-        System.err.println("##### Game result #####");
-
-        int[] teamNo = new int[nplayers];
-        int[] sortedScores = new int[nplayers];
-        for (int i = 0; i != nplayers; ++i) {
-            teamNo[i] = i;
-            sortedScores[i] = scores[i];
-        }
+        if (!textReport)
+            return;
 
         // sort by highest score
-        sortByScore(teamNo, sortedScores);
+        int[] teamNo = sortByScore(scores);
 
         // print result
+        StringBuilder sb = new StringBuilder();
+        sb.append("##### Game result #####\n");
         for (int i = 0; i != scores.length; ++i)
-            System.err.println("Player " + players[teamNo[i]].name() + ": " + sortedScores[i]);
+            sb.append("Player " + name(teamNo[i]) + ": " + scores[teamNo[i]] + "\n");
+        report(sb.toString());
     }
 
-    // sort teams by score
+    // sort teams by score, highest first
+    // a counting sort, scores are small: at most 1 + friends + enemies
+    // Return:
+    //  int[] - the teams in order, ties in order of team number
     //
-	private static void sortByScore(int[] teams, int[] points)
+	private static int[] sortByScore(int[] points)
 	{
-		for (int i = 0 ; i != teams.length ; ++i) {
-			// find max
-			int max = i;
-			for (int j = i + 1 ; j != teams.length ; ++j)
-				if (points[j] > points[max])
-					max = j;
-			// swap team
-			int tempTeam = teams[i];
-			teams[i] = teams[max];
-			teams[max] = tempTeam;
-			// swap points
-			int teamPoints = points[i];
-			points[i] = points[max];
-			points[max] = teamPoints;
-		}
+		int max = 0;
+		for (int p : points)
+			max = Math.max(max, p);
+
+		// start[s] is the first position of score s, counting from the top
+		int[] start = new int[max + 2];
+		for (int p : points)
+			start[max - p + 1]++;
+		for (int s = 1; s != start.length; ++s)
+			start[s] += start[s-1];
+
+		int[] teams = new int[points.length];
+		for (int i = 0; i != points.length; ++i)
+			teams[start[max - points[i]]++] = i;
+		return teams;
 	}
 
     // return the rank of each player
-    private int[] rank()
+    // a player's rank is the number of players with a higher score
+    //
+    public int[] rank()
     {
-        int[] rank = new int[nplayers];
-        int[] teamNo = new int[nplayers];
-        int[] sortedScores = new int[nplayers];
-        for (int i = 0; i != nplayers; ++i) {
-            teamNo[i] = i;
-            sortedScores[i] = scores[i];
-        }
-        
-        // sort by highest score
-        sortByScore(teamNo, sortedScores);
+        Telemetry.RankEvent event = new Telemetry.RankEvent();
+        event.begin();
+        long start = Telemetry.start();
+
+        int max = 0;
+        for (int s : scores)
+            max = Math.max(max, s);
+
+        // above[s] is the number of players scoring more than s
+        int[] above = new int[max + 1];
+        for (int s : scores)
+            if (s > 0)
+                above[s-1]++;
+        for (int s = max - 1; s >= 0; --s)
+            above[s] += above[s+1];
 
-        int prevrank = 0;
-        for (int i = 0; i != nplayers; ++i) {
-            if (i > 0 && sortedScores[i] == sortedScores[i-1])
-                rank[teamNo[i]] = prevrank;
-            else {
-                rank[teamNo[i]] = i;
-                prevrank = i;
-            }
-        }
+        int[] rank = new int[nplayers];
+        for (int i = 0; i != nplayers; ++i)
+            rank[i] = above[scores[i]];
 
+        Telemetry.stop(Telemetry.Phase.RANK, start);
+        event.seed = seed;
+        event.nplayers = nplayers;
+        event.commit();
         return rank;
     }
 
+    // largest arena whose relationship matrix is printed
+    private static final int MAX_MATRIX = 100;
+
     // game configurations
     private int nenemies;
     private int nfriends;
     private int nplayers;
 
     // relationship
-    private int[][] relationship;
+    // friendship[p] and enmityship[p] list the friends and enemies of p
     private int[][] friendship;
     private int[][] enmityship;
+    // enemyOf[q] lists the players that have q as an enemy
+    private int[][] enemyOf;
 
     private Player[] players;
+    // batch players, batchIds[b] are the agents of batch b
+    private BatchPlayer[] batches = new BatchPlayer[0];
+    private int[][] batchIds = new int[0][];
+    // answers of the agents of each batch in a round
+    private int[][] batchTargets;
     private boolean[] alive;
     private boolean[] violation;
+    // shoot calls still running after their deadline
+    private Future<?>[] pending;
+
+    // answers of the players in the current round
+    private int[] targets;
+    private int[] outcome;
+    // what a player threw when its outcome is FAILED
+    private Throwable[] failure;
+    // running shoot calls in concurrent mode
+    private Future<?>[] shots;
+
+    // outcome of asking a player for a target
+    private static final int IDLE = 0;      // dead or disabled, not asked
+    private static final int SHOT = 1;      // answered targets[p]
+    private static final int FAILED = 2;    // threw failure[p]
+    private static final int LATE = 3;      // missed the deadline
+
+    // scores, kept up to date as players die
     private int[] scores;
 
-    private Random gen = new Random();
+    // the recorded game this one repeats, null for a new game
+    private Replay replay;
+
+    // game seed and the engine's random stream derived from it
+    private long seed;
+    private Random gen;
 
     // round num
     private int round = 0;
     // number of consecutive peaceful days
     private int npeace = 0;
+    // true when no further deaths can happen
+    private boolean settled = false;
+    // deterministic[p] is true if player p declared itself deterministic
+    private boolean[] deterministic;
+    // previous rounds seen since the last death, and their hashes
+    private int[][] seen = new int[10][];
+    private long[] seenHash = new long[10];
+    private int seenCount = 0;
     // prevous round info
     private int[] previous = null;
     // current round info
     private int[] current;
+    // what players see of the game
+    private final GameView view = new View();
+    // events of the game go here, null if nobody listens
+    private GameListener listener;
+    private boolean textReport = true;
 }
@@ -0,0 +1,70 @@
+package gunslinger.sim;
+
+// Passes the events of a game to several listeners
+// see GameListener.of
+//
+class ListenerList implements GameListener
+{
+    ListenerList(GameListener[] listeners)
+    {
+        this.listeners = listeners;
+    }
+
+    public void gameStart(long seed, String[] names, int[][] friendship, int[][] enmityship)
+    {
+        for (GameListener l : listeners)
+            l.gameStart(seed, names, friendship, enmityship);
+    }
+
+    public void roundStart(int round, boolean[] alive)
+    {
+        for (GameListener l : listeners)
+            l.roundStart(round, alive);
+    }
+
+    public void shot(int round, int p, int target)
+    {
+        for (GameListener l : listeners)
+            l.shot(round, p, target);
+    }
+
+    public void violation(int round, int p, int target, String reason)
+    {
+        for (GameListener l : listeners)
+            l.violation(round, p, target, reason);
+    }
+
+    public void killed(int round, int p)
+    {
+        for (GameListener l : listeners)
+            l.killed(round, p);
+    }
+
+    public void roundEnd(int round, int[] actions)
+    {
+        for (GameListener l : listeners)
+            l.roundEnd(round, actions);
+    }
+
+    public void gameEnd(int rounds, int[] scores)
+    {
+        for (GameListener l : listeners)
+            l.gameEnd(rounds, scores);
+    }
+
+    public void message(String text)
+    {
+        for (GameListener l : listeners)
+            l.message(text);
+    }
+
+    public boolean reports()
+    {
+        for (GameListener l : listeners)
+            if (l.reports())
+                return true;
+        return false;
+    }
+
+    private final GameListener[] listeners;
+}
@@ -0,0 +1,75 @@
+package gunslinger.sim;
+
+import java.nio.file.*;
+import java.util.*;
+
+// Combine the partial results of the shards of a tournament
+// It prints the ranking exactly as a single run over all the games
+// would have, then the mean score of every player. Shards must come
+// from the same tournament and must not overlap; missing games are
+// reported, the ranking then covers the games there are
+//
+public class Merge
+{
+    // Merge <partial> ...
+    //
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0) {
+            System.err.println("Usage: java Merge <partial> ...");
+            System.exit(1);
+        }
+
+        List<Partial> shards = new ArrayList<Partial>();
+        for (String arg : args)
+            shards.add(Partial.read(Paths.get(arg)));
+
+        Partial first = shards.get(0);
+        int n = first.names.length;
+        int[][] ranks = new int[n][n];
+        long[] scoreSums = new long[n];
+        long games = 0;
+
+        for (int s = 0; s != shards.size(); ++s) {
+            Partial shard = shards.get(s);
+            if (!shard.sameTournament(first)) {
+                System.err.println("[Error] " + args[s] + " is from a different tournament than " + args[0]);
+                System.exit(1);
+            }
+            for (int t = 0; t != s; ++t) {
+                Partial other = shards.get(t);
+                if (shard.from < other.to && other.from < shard.to) {
+                    System.err.println("[Error] " + args[s] + " overlaps " + args[t]);
+                    System.exit(1);
+                }
+            }
+
+            for (int i = 0; i != n; ++i) {
+                for (int r = 0; r != n; ++r)
+                    ranks[i][r] += shard.ranks[i][r];
+                scoreSums[i] += shard.scoreSums[i];
+            }
+            games += shard.to - shard.from;
+        }
+
+        // the games covered, in order, gaps between them are missing
+        Collections.sort(shards, new Comparator<Partial>() {
+                public int compare(Partial a, Partial b) {
+                    return Integer.compare(a.from, b.from);
+                }
+            });
+        int end = 0;
+        for (Partial shard : shards) {
+            if (shard.from > end)
+                System.err.println("[Warning] games " + end + " to " + (shard.from - 1) + " are missing");
+            end = shard.to;
+        }
+
+        System.err.println("Master seed: " + first.seed);
+        Gunslinger.printRanks(System.err, first.names, ranks);
+
+        System.out.println("# games: " + games);
+        for (int i = 0; i != n; ++i)
+            System.out.printf("%8s mean score %.4f%n", first.names[i], games == 0 ? 0.0 : (double) scoreSums[i] / games);
+    }
+}
@@ -0,0 +1,112 @@
+package gunslinger.sim;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// The result of one shard of a tournament
+// A shard plays the games from..to-1 of a tournament. Game seeds only
+// depend on the master seed and the game index, so a shard plays the
+// same games wherever and however often it runs. Merge adds shards up
+//
+// File format, big endian:
+//  int    magic "GSPT"
+//  byte   version
+//  int    number of players n
+//  int    enemies per player
+//  int    friends per player
+//  long   master seed
+//  int    first game, int end of games
+//  n x    UTF name of the player
+//  n x n  int ranks[i][r], as Tournament.play returns them
+//  n x    long sum of the player's scores
+//
+public class Partial
+{
+    static final int MAGIC = 0x47535054;
+    static final byte VERSION = 1;
+
+    // constructor
+    //
+    public Partial(String[] names, int nenemies, int nfriends, long seed,
+                   int from, int to, int[][] ranks, long[] scoreSums)
+    {
+        this.names = names;
+        this.nenemies = nenemies;
+        this.nfriends = nfriends;
+        this.seed = seed;
+        this.from = from;
+        this.to = to;
+        this.ranks = ranks;
+        this.scoreSums = scoreSums;
+    }
+
+    // write the partial, replacing the file at once when it is complete
+    //
+    public void write(Path path) throws IOException
+    {
+        Path temp = Paths.get(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(names.length);
+            out.writeInt(nenemies);
+            out.writeInt(nfriends);
+            out.writeLong(seed);
+            out.writeInt(from);
+            out.writeInt(to);
+            for (String name : names)
+                out.writeUTF(name);
+            for (int[] row : ranks)
+                for (int count : row)
+                    out.writeInt(count);
+            for (long sum : scoreSums)
+                out.writeLong(sum);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // read a partial
+    //
+    public static Partial read(Path path) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION)
+                throw new IOException("Not a partial result: " + path);
+            int n = in.readInt();
+            int nenemies = in.readInt();
+            int nfriends = in.readInt();
+            long seed = in.readLong();
+            int from = in.readInt();
+            int to = in.readInt();
+            String[] names = new String[n];
+            for (int p = 0; p != n; ++p)
+                names[p] = in.readUTF();
+            int[][] ranks = new int[n][n];
+            for (int i = 0; i != n; ++i)
+                for (int r = 0; r != n; ++r)
+                    ranks[i][r] = in.readInt();
+            long[] scoreSums = new long[n];
+            for (int i = 0; i != n; ++i)
+                scoreSums[i] = in.readLong();
+            return new Partial(names, nenemies, nfriends, seed, from, to, ranks, scoreSums);
+        }
+    }
+
+    // is the other partial of the same tournament?
+    //
+    boolean sameTournament(Partial other)
+    {
+        return Arrays.equals(names, other.names) && nenemies == other.nenemies
+            && nfriends == other.nfriends && seed == other.seed;
+    }
+
+    final String[] names;
+    final int nenemies;
+    final int nfriends;
+    final long seed;
+    final int from;
+    final int to;
+    final int[][] ranks;
+    final long[] scoreSums;
+}
@@ -6,7 +6,13 @@ package gunslinger.sim;
 //
 public abstract class Player
 {
-    private static int globalId = 0;
+    // ids are handed out in creation order on each thread
+    // the engine restarts the numbering before it builds a game's players
+    private static final ThreadLocal<int[]> nextId = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
     
     // id of player
     public final int id;
@@ -14,9 +20,43 @@ public abstract class Player
     // constructor for base class
     public Player()
     {
-        id = globalId++;
+        id = nextId.get()[0]++;
     }
 
+    // restart the id numbering of players created on this thread
+    //
+    static void resetIds()
+    {
+        nextId.get()[0] = 0;
+    }
+
+    // the next player created on this thread gets the given id
+    // a player host creates players of any id
+    //
+    static void setNextId(int id)
+    {
+        nextId.get()[0] = id;
+    }
+
+    // the game is over and the engine is done with the player
+    // players run elsewhere free what they hold there
+    //
+    void release()
+    {
+    }
+
+    // seed of this player's random stream in the current game
+    // it is derived from the game seed, so seeding your generator
+    // with it makes every game reproducible
+    //
+    protected final long seed()
+    {
+        return seed;
+    }
+
+    // set by the engine before init
+    long seed;
+
     // name of group
     //
     public abstract String name();
@@ -28,10 +68,79 @@ public abstract class Player
     // Pick a target to shoot
     // Parameters:
     //  prevRound - an array of previous shoots, prevRound[i] is the player that player i shot
-    //              -1 if player i did not shoot
+    //              -1 if player i did not shoot, null in the first round
     //  alive - an array of player's status, true if the player is still alive in this round
     // Return:
     //  int - the player id to shoot, return -1 if do not shoot anyone
     //
-    public abstract int shoot(int[] prevRound, boolean[] alive);
+    // Override either this or shoot(GameView), the loader rejects
+    // a player class that overrides neither
+    //
+    public int shoot(int[] prevRound, boolean[] alive)
+    {
+        throw new UnsupportedOperationException("Player overrides neither shoot method");
+    }
+
+    // Pick a target to shoot from a read-only view of the game
+    // The engine calls this one. Overriding it saves copying the
+    // game state for every shoot, the default copies the view into
+    // fresh arrays and calls shoot(int[], boolean[])
+    // Return:
+    //  int - the player id to shoot, return -1 if do not shoot anyone
+    //
+    public int shoot(GameView view)
+    {
+        int n = view.nplayers();
+
+        int[] prevRound = null;
+        if (!view.firstRound()) {
+            prevRound = new int[n];
+            for (int i = 0; i != n; ++i)
+                prevRound[i] = view.previous(i);
+        }
+
+        boolean[] alive = new boolean[n];
+        for (int i = 0; i != n; ++i)
+            alive[i] = view.alive(i);
+
+        return shoot(prevRound, alive);
+    }
+
+    // does the player class override one of the shoot methods?
+    //
+    static boolean overridesShoot(Class<? extends Player> cls)
+    {
+        try {
+            return cls.getMethod("shoot", GameView.class).getDeclaringClass() != Player.class
+                || cls.getMethod("shoot", int[].class, boolean[].class).getDeclaringClass() != Player.class;
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // Does the player always pick the same target in the same situation?
+    // Return true only if shoot depends on nothing but the previous
+    // round and who is alive: no random numbers, no memory of earlier
+    // rounds. The engine then ends a game as soon as a situation repeats
+    //
+    public boolean isDeterministic()
+    {
+        return false;
+    }
+
+    // Tell how likely each choice of shoot is, for exact analysis
+    // Parameters:
+    //  view - the game, as shoot would see it
+    //  odds - n+1 zeros, set odds[t] to the probability of shooting
+    //         player t and odds[n] to that of not shooting at all
+    // Return:
+    //  boolean - true if the odds are filled in, false if the player
+    //            cannot tell, which is the default
+    // The odds may depend on nothing but the previous round and who is
+    // alive, like a deterministic shoot. See Solver
+    //
+    public boolean declareStrategy(GameView view, double[] odds)
+    {
+        return false;
+    }
 }
@@ -0,0 +1,219 @@
+package gunslinger.sim;
+
+import java.io.*;
+import java.util.*;
+
+// A child process that runs the players of one group for the engine
+// A strategy that leaks or collects garbage all day only hurts its own
+// process. The engine starts hosts through RemotePlayer and talks to
+// them over stdin/stdout. Calls of many players and many games travel
+// in the same message, so isolation does not cost a round trip each.
+// Player output to System.out goes to stderr, stdout is the protocol.
+// Requests run one after the other, a strategy that hangs holds up the
+// whole host until the engine kills it at the shoot deadline
+//
+// Messages, big endian, the same in both directions:
+//  int    number of records
+//  records, each
+//  int    tag, a response carries the tag of its request
+//  int    length of the body
+//  body
+//
+// Request bodies: byte op, int handle of the player instance, then
+//  NEW    int id, a new player with the given id
+//  INIT   long seed, int n, int count, count friends, int count, count enemies
+//  SHOOT  int round, int n, byte first round, then unless in the first
+//         round n ids shot in the previous round, 2 bytes each up to
+//         32767 players, 4 bytes above; (n+7)/8 bytes of alive bits
+//  CLOSE  drop the instance
+// Response bodies: byte status, OK or FAILED, then
+//  OK     NEW: UTF name, SHOOT: int target, nothing otherwise
+//  FAILED UTF description of what the player threw
+//
+public class PlayerHost
+{
+    static final byte NEW = 0;
+    static final byte INIT = 1;
+    static final byte SHOOT = 2;
+    static final byte CLOSE = 3;
+
+    static final byte OK = 0;
+    static final byte FAILED = 1;
+
+    // PlayerHost <root> <group> <recompile>
+    //
+    public static void main(String[] args) throws Exception
+    {
+        // keep players from writing into the protocol
+        OutputStream protocol = new FileOutputStream(FileDescriptor.out);
+        System.setOut(System.err);
+
+        Class<? extends Player> cls = new PlayerLoader(args[0], Boolean.parseBoolean(args[2])).load(args[1]);
+        new PlayerHost(cls).serve(new DataInputStream(new BufferedInputStream(System.in, 1 << 16)),
+                                  new DataOutputStream(new BufferedOutputStream(protocol, 1 << 16)));
+    }
+
+    private PlayerHost(Class<? extends Player> cls)
+    {
+        this.cls = cls;
+    }
+
+    // answer messages until the engine closes the pipe
+    //
+    private void serve(DataInputStream in, DataOutputStream out) throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream response = new DataOutputStream(body);
+
+        while (true) {
+            int count;
+            try {
+                count = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+
+            out.writeInt(count);
+            for (int r = 0; r != count; ++r) {
+                int tag = in.readInt();
+                in.readInt();
+
+                body.reset();
+                handle(in, response);
+                response.flush();
+
+                out.writeInt(tag);
+                out.writeInt(body.size());
+                body.writeTo(out);
+            }
+            out.flush();
+        }
+    }
+
+    // run one request, the body is read whatever happens
+    //
+    private void handle(DataInputStream in, DataOutputStream response) throws IOException
+    {
+        byte op = in.readByte();
+        int handle = in.readInt();
+
+        switch (op) {
+        case NEW: {
+            int id = in.readInt();
+            try {
+                Player.setNextId(id);
+                Player player = cls.getDeclaredConstructor().newInstance();
+                instances.put(handle, player);
+                response.writeByte(OK);
+                response.writeUTF(player.name());
+            } catch (Throwable e) {
+                failed(response, e);
+            }
+            break;
+        }
+        case INIT: {
+            long seed = in.readLong();
+            int n = in.readInt();
+            int[] friends = readIds(in);
+            int[] enemies = readIds(in);
+            try {
+                Player player = instances.get(handle);
+                player.seed = seed;
+                player.init(n, friends, enemies);
+                response.writeByte(OK);
+            } catch (Throwable e) {
+                failed(response, e);
+            }
+            break;
+        }
+        case SHOOT: {
+            view.read(in);
+            try {
+                int target = instances.get(handle).shoot(view);
+                response.writeByte(OK);
+                response.writeInt(target);
+            } catch (Throwable e) {
+                failed(response, e);
+            }
+            break;
+        }
+        case CLOSE:
+            instances.remove(handle);
+            response.writeByte(OK);
+            break;
+        default:
+            throw new IOException("Unknown request " + op);
+        }
+    }
+
+    private static int[] readIds(DataInputStream in) throws IOException
+    {
+        int[] ids = new int[in.readInt()];
+        for (int i = 0; i != ids.length; ++i)
+            ids[i] = in.readInt();
+        return ids;
+    }
+
+    private static void failed(DataOutputStream response, Throwable e) throws IOException
+    {
+        e.printStackTrace();
+        response.writeByte(FAILED);
+        response.writeUTF(String.valueOf(e));
+    }
+
+    // the game as a SHOOT request describes it
+    // the arrays are reused from one request to the next
+    //
+    private static class HostView implements GameView
+    {
+        void read(DataInputStream in) throws IOException
+        {
+            round = in.readInt();
+            n = in.readInt();
+            first = in.readByte() != 0;
+            if (previous.length < n) {
+                previous = new int[n];
+                alive = new byte[(n + 7) / 8];
+            }
+            if (!first)
+                for (int i = 0; i != n; ++i)
+                    previous[i] = n > Short.MAX_VALUE ? in.readInt() : in.readShort();
+            in.readFully(alive, 0, (n + 7) / 8);
+        }
+
+        public int nplayers()
+        {
+            return n;
+        }
+
+        public int round()
+        {
+            return round;
+        }
+
+        public boolean firstRound()
+        {
+            return first;
+        }
+
+        public int previous(int i)
+        {
+            return first ? -1 : previous[i];
+        }
+
+        public boolean alive(int i)
+        {
+            return (alive[i >>> 3] & (1 << (i & 7))) != 0;
+        }
+
+        private int round;
+        private int n;
+        private boolean first;
+        private int[] previous = new int[0];
+        private byte[] alive = new byte[0];
+    }
+
+    private final Class<? extends Player> cls;
+    private final Map<Integer, Player> instances = new HashMap<Integer, Player>();
+    private final HostView view = new HostView();
+}
@@ -0,0 +1,308 @@
+package gunslinger.sim;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.tools.*;
+
+// Compiles and loads the Player classes of groups
+// Sources are compiled in memory and defined by a class loader of
+// the group. The bytecode is cached on disk under a hash of the sources
+// and of the engine classes they compile against, so a group is only
+// compiled again when its sources or that part of the engine change.
+// Independent groups are compiled in parallel.
+//
+class PlayerLoader
+{
+    // constructor
+    //  root - directory of the groups, also the package prefix
+    //  recompile - false to use the classes on the class path when there are any
+    //
+    PlayerLoader(String root, boolean recompile)
+    {
+        this.root = root;
+        this.recompile = recompile;
+        this.cache = Paths.get(root, CACHE_DIR);
+    }
+
+    // load the Player class of every group, in the given order
+    //
+    List<Class<? extends Player>> load(List<String> groups) throws Exception
+    {
+        int nthreads = Math.min(groups.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, nthreads));
+        try {
+            // one task per distinct group
+            Map<String, Future<Class<? extends Player>>> tasks = new HashMap<String, Future<Class<? extends Player>>>();
+            for (final String group : groups)
+                if (!tasks.containsKey(group))
+                    tasks.put(group, pool.submit(new Callable<Class<? extends Player>>() {
+                            public Class<? extends Player> call() throws Exception {
+                                return load(group);
+                            }
+                        }));
+
+            List<Class<? extends Player>> classes = new ArrayList<Class<? extends Player>>();
+            for (String group : groups) {
+                try {
+                    classes.add(tasks.get(group).get());
+                } catch (ExecutionException e) {
+                    // rethrow what the task threw, errors as they are
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    if (cause instanceof Exception)
+                        throw (Exception) cause;
+                    throw e;
+                }
+            }
+            return classes;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // load the Player class of a group
+    //
+    Class<? extends Player> load(String group) throws Exception
+    {
+        String className = root + "." + group + ".Player";
+        File dir = new File(root, group);
+
+        // precompiled classes
+        if (!recompile && new File(dir, "Player.class").exists()) {
+            System.err.println("Group: " + group + " from the class path");
+            return checked(group, Gunslinger.class.getClassLoader().loadClass(className).asSubclass(Player.class));
+        }
+
+        List<File> sources = Gunslinger.directoryFiles(dir.getPath(), ".java");
+        if (sources.isEmpty())
+            throw new Exception("No sources for group " + group);
+        String hash = hash(sources);
+
+        // loaded before in this process
+        String key = group + "@" + hash;
+        synchronized (loaded) {
+            if (loaded.containsKey(key))
+                return loaded.get(key);
+        }
+
+        Map<String, byte[]> bytecode = readCache(group, hash);
+        if (bytecode != null)
+            System.err.println("Group: " + group + " unchanged, using cached classes");
+        else {
+            bytecode = compile(group, sources);
+            writeCache(group, hash, bytecode);
+            System.err.println("Group: " + group + " compiled " + sources.size() + " source files");
+        }
+
+        ClassLoader loader = new MemoryClassLoader(bytecode, Gunslinger.class.getClassLoader());
+        Class<? extends Player> playerClass = checked(group, loader.loadClass(className).asSubclass(Player.class));
+        synchronized (loaded) {
+            loaded.put(key, playerClass);
+        }
+        return playerClass;
+    }
+
+    // a player that overrides neither shoot method would fail every
+    // game at runtime, stop it here
+    //
+    private static Class<? extends Player> checked(String group, Class<? extends Player> cls) throws Exception
+    {
+        if (!Player.overridesShoot(cls))
+            throw new Exception("Player of group " + group + " overrides neither shoot(GameView) nor shoot(int[], boolean[])");
+        return cls;
+    }
+
+    // hash of the sources of a group, their paths and contents
+    //
+    private String hash(List<File> sources) throws Exception
+    {
+        List<File> sorted = new ArrayList<File>(sources);
+        Collections.sort(sorted);
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(System.getProperty("java.specification.version").getBytes(StandardCharsets.UTF_8));
+        digest.update(engineHash());
+        for (File file : sorted) {
+            digest.update((byte) 0);
+            digest.update(file.getPath().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(file.toPath()));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest())
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    // hash of the bytecode of the engine classes players compile against
+    // taken once per process
+    //
+    private static synchronized byte[] engineHash() throws Exception
+    {
+        if (engineHash == null) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Class<?> cls : API)
+                try (InputStream in = cls.getResourceAsStream(cls.getSimpleName() + ".class")) {
+                    digest.update(cls.getName().getBytes(StandardCharsets.UTF_8));
+                    if (in != null)
+                        digest.update(in.readAllBytes());
+                }
+            engineHash = digest.digest();
+        }
+        return engineHash;
+    }
+
+    // compile the sources of a group into memory
+    // Return:
+    //  Map - the bytecode of every class by its binary name
+    //
+    private Map<String, byte[]> compile(String group, List<File> sources) throws Exception
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new Exception("Cannot load compiler");
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, null);
+        final Map<String, byte[]> bytecode = new HashMap<String, byte[]>();
+
+        // keep compiled classes in memory
+        JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standard) {
+            public JavaFileObject getJavaFileForOutput(Location location, final String name,
+                                                       JavaFileObject.Kind kind, FileObject sibling) {
+                URI uri = URI.create("memory:///" + name.replace('.', '/') + kind.extension);
+                return new SimpleJavaFileObject(uri, kind) {
+                    public OutputStream openOutputStream() {
+                        return new ByteArrayOutputStream() {
+                            public void close() {
+                                bytecode.put(name, toByteArray());
+                            }
+                        };
+                    }
+                };
+            }
+        };
+
+        try {
+            Iterable<? extends JavaFileObject> units = standard.getJavaFileObjectsFromFiles(sources);
+            boolean ok = compiler.getTask(null, fileManager, diagnostics, null, null, units).call();
+            if (!ok) {
+                StringBuilder sb = new StringBuilder();
+                for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics())
+                    sb.append(d).append('\n');
+                throw new Exception("Compile error in group " + group + "\n" + sb);
+            }
+        } finally {
+            fileManager.close();
+        }
+        return bytecode;
+    }
+
+    // read the cached bytecode of a group, null if there is none
+    //
+    private Map<String, byte[]> readCache(String group, String hash) throws IOException
+    {
+        Path dir = cache.resolve(group).resolve(hash);
+        if (!Files.isDirectory(dir))
+            return null;
+
+        Map<String, byte[]> bytecode = new HashMap<String, byte[]>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.class")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                bytecode.put(name.substring(0, name.length() - ".class".length()), Files.readAllBytes(file));
+            }
+        }
+        return bytecode;
+    }
+
+    // cache the bytecode of a group and drop its older entries
+    // a failure only costs a compile next time
+    //
+    private void writeCache(String group, String hash, Map<String, byte[]> bytecode)
+    {
+        Path groupDir = cache.resolve(group);
+        try {
+            Files.createDirectories(groupDir);
+
+            // write a temporary entry and move it in place at once
+            Path tmp = Files.createTempDirectory(groupDir, hash + ".tmp");
+            for (Map.Entry<String, byte[]> entry : bytecode.entrySet())
+                Files.write(tmp.resolve(entry.getKey() + ".class"), entry.getValue());
+            try {
+                Files.move(tmp, groupDir.resolve(hash), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // written by somebody else meanwhile
+                delete(tmp);
+            }
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(groupDir)) {
+                for (Path entry : entries)
+                    if (!entry.getFileName().toString().startsWith(hash))
+                        delete(entry);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot cache classes of group " + group + ": " + e);
+        }
+    }
+
+    // delete a cache entry
+    //
+    private static void delete(Path dir) throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files)
+                Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    // Defines the classes of a group from bytecode in memory
+    // The group's classes come before the parent's, so stale
+    // class files on the class path are never picked up
+    //
+    private static class MemoryClassLoader extends ClassLoader
+    {
+        MemoryClassLoader(Map<String, byte[]> bytecode, ClassLoader parent)
+        {
+            super(parent);
+            this.bytecode = bytecode;
+        }
+
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+        {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    byte[] bytes = bytecode.get(name);
+                    if (bytes == null)
+                        return super.loadClass(name, resolve);
+                    c = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve)
+                    resolveClass(c);
+                return c;
+            }
+        }
+
+        private final Map<String, byte[]> bytecode;
+    }
+
+    // directory of the cache below the root
+    private static final String CACHE_DIR = ".classcache";
+    // the engine classes a player sees, bytecode compiled against others is stale
+    private static final Class<?>[] API = {Player.class, GameView.class, BatchPlayer.class, Tactics.class};
+    private static byte[] engineHash;
+
+    private final String root;
+    private final boolean recompile;
+    private final Path cache;
+    // classes loaded in this process, by group and hash
+    private static final Map<String, Class<? extends Player>> loaded = new HashMap<String, Class<? extends Player>>();
+}
@@ -0,0 +1,330 @@
+package gunslinger.sim;
+
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A player that runs in a PlayerHost child process
+// Each group gets a pool of host processes, shared by every game of
+// the engine, its players are spread over them in turn. Requests of all
+// threads are queued per host and sent together, init and close do not
+// wait for their answer. A host runs one request at a time, so one that
+// misses a shoot deadline is killed; a dead host is replaced by a new
+// process the next time its slot of the pool is picked, the players it
+// ran fail. See PlayerHost for the protocol
+//
+class RemotePlayer extends Player
+{
+    // a new player of the given class, in one of its group's hosts
+    //
+    RemotePlayer(Class<? extends Player> cls)
+    {
+        host = Host.of(group(cls));
+        handle = host.handles.incrementAndGet();
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream body = request(bytes, PlayerHost.NEW);
+            body.writeInt(id);
+            created = host.call(bytes, body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // group of a player class, gunslinger.<group>.Player
+    //
+    private static String group(Class<? extends Player> cls)
+    {
+        String name = cls.getName();
+        return name.substring(Gunslinger.ROOT_DIR.length() + 1, name.lastIndexOf('.'));
+    }
+
+    public String name()
+    {
+        if (name == null) {
+            try {
+                name = answer(created, false).readUTF();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return name;
+    }
+
+    public void init(int nplayers, int[] friends, int[] enemies)
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream body = request(bytes, PlayerHost.INIT);
+            body.writeLong(seed());
+            body.writeInt(nplayers);
+            writeIds(body, friends);
+            writeIds(body, enemies);
+            // a failure shows up in the next shoot
+            initialized = host.call(bytes, body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int shoot(GameView view)
+    {
+        try {
+            if (initialized != null) {
+                answer(initialized, false);
+                initialized = null;
+            }
+
+            int n = view.nplayers();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 4 * n);
+            DataOutputStream body = request(bytes, PlayerHost.SHOOT);
+            body.writeInt(view.round());
+            body.writeInt(n);
+            body.writeByte(view.firstRound() ? 1 : 0);
+            if (!view.firstRound())
+                for (int i = 0; i != n; ++i) {
+                    if (n > Short.MAX_VALUE)
+                        body.writeInt(view.previous(i));
+                    else
+                        body.writeShort(view.previous(i));
+                }
+            byte[] alive = new byte[(n + 7) / 8];
+            for (int i = 0; i != n; ++i)
+                if (view.alive(i))
+                    alive[i >>> 3] |= 1 << (i & 7);
+            body.write(alive);
+
+            return answer(host.call(bytes, body), true).readInt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the game is over, the host forgets the instance
+    //
+    void release()
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            host.call(bytes, request(bytes, PlayerHost.CLOSE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DataOutputStream request(ByteArrayOutputStream bytes, byte op) throws IOException
+    {
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(op);
+        body.writeInt(handle);
+        return body;
+    }
+
+    private static void writeIds(DataOutputStream body, int[] ids) throws IOException
+    {
+        body.writeInt(ids.length);
+        for (int i : ids)
+            body.writeInt(i);
+    }
+
+    // wait for an answer, what the player threw is thrown here
+    // the engine interrupts a shoot that misses its deadline,
+    // the host is stuck in it and gets killed
+    //
+    private DataInputStream answer(Future<byte[]> future, boolean shoot) throws IOException
+    {
+        byte[] response;
+        try {
+            response = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (shoot)
+                host.kill("a shoot missed its deadline");
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException("Player host is gone", e.getCause());
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(response));
+        if (in.readByte() == PlayerHost.FAILED)
+            throw new RuntimeException("Remote player failed: " + in.readUTF());
+        return in;
+    }
+
+    // processes per group, 0 to run players in the engine, -Dgunslinger.isolate=<n>
+    static final int PROCESSES = Integer.getInteger("gunslinger.isolate", 0);
+
+    // a host process and the two threads that talk to it
+    //
+    private static class Host
+    {
+        // the next host of a group's pool
+        //
+        static synchronized Host of(String group)
+        {
+            Host[] pool = pools.get(group);
+            if (pool == null) {
+                pool = new Host[PROCESSES];
+                pools.put(group, pool);
+            }
+            int next = turns.containsKey(group) ? turns.get(group) : 0;
+            turns.put(group, (next + 1) % pool.length);
+
+            // the first time, or the last one died
+            if (pool[next] == null || pool[next].dead != null) {
+                try {
+                    pool[next] = new Host(group);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return pool[next];
+        }
+
+        private Host(String group) throws IOException
+        {
+            this.group = group;
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                         PlayerHost.class.getName(), Gunslinger.ROOT_DIR, group,
+                                         String.valueOf(Gunslinger.recompile))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), 1 << 16));
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream(), 1 << 16));
+
+            writer = new Thread(new Runnable() {
+                    public void run() {
+                        write();
+                    }
+                }, "host-writer " + group);
+            Thread reader = new Thread(new Runnable() {
+                    public void run() {
+                        read();
+                    }
+                }, "host-reader " + group);
+            writer.setDaemon(true);
+            reader.setDaemon(true);
+            writer.start();
+            reader.start();
+        }
+
+        // queue a request, it goes out with whatever else is queued
+        //
+        Future<byte[]> call(ByteArrayOutputStream bytes, DataOutputStream body) throws IOException
+        {
+            body.flush();
+            Request request = new Request(tags.incrementAndGet(), bytes.toByteArray());
+            waiting.put(request.tag, request.answer);
+            if (dead != null)
+                request.answer.completeExceptionally(dead);
+            else
+                queue.add(request);
+            return request.answer;
+        }
+
+        // send everything queued as one message
+        //
+        private void write()
+        {
+            List<Request> batch = new ArrayList<Request>();
+            try {
+                while (true) {
+                    batch.clear();
+                    batch.add(queue.take());
+                    queue.drainTo(batch);
+
+                    out.writeInt(batch.size());
+                    for (Request request : batch) {
+                        out.writeInt(request.tag);
+                        out.writeInt(request.body.length);
+                        out.write(request.body);
+                    }
+                    out.flush();
+                }
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        // hand every answer to the thread that waits for it
+        //
+        private void read()
+        {
+            try {
+                while (true) {
+                    int count = in.readInt();
+                    for (int r = 0; r != count; ++r) {
+                        int tag = in.readInt();
+                        byte[] body = new byte[in.readInt()];
+                        in.readFully(body);
+                        CompletableFuture<byte[]> answer = waiting.remove(tag);
+                        if (answer != null)
+                            answer.complete(body);
+                    }
+                }
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        // give up on the process, the players in it fail
+        //
+        void kill(String reason)
+        {
+            if (dead == null)
+                System.err.println("[Warning] Killing the player host of " + group + ": " + reason);
+            fail(new IOException("Player host of " + group + " killed: " + reason));
+        }
+
+        // the process is gone, nobody gets an answer anymore
+        //
+        private synchronized void fail(Exception e)
+        {
+            if (dead == null)
+                dead = e;
+            for (CompletableFuture<byte[]> answer : waiting.values())
+                answer.completeExceptionally(dead);
+            waiting.clear();
+            process.destroyForcibly();
+            writer.interrupt();
+        }
+
+        private static final Map<String, Host[]> pools = new HashMap<String, Host[]>();
+        private static final Map<String, Integer> turns = new HashMap<String, Integer>();
+
+        private final String group;
+        private final Process process;
+        private final Thread writer;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+        private final ConcurrentHashMap<Integer, CompletableFuture<byte[]>> waiting =
+            new ConcurrentHashMap<Integer, CompletableFuture<byte[]>>();
+        private final AtomicInteger tags = new AtomicInteger();
+        private final AtomicInteger handles = new AtomicInteger();
+        private volatile Exception dead;
+    }
+
+    private static class Request
+    {
+        Request(int tag, byte[] body)
+        {
+            this.tag = tag;
+            this.body = body;
+        }
+
+        final int tag;
+        final byte[] body;
+        final CompletableFuture<byte[]> answer = new CompletableFuture<byte[]>();
+    }
+
+    private final Host host;
+    private final int handle;
+    private final Future<byte[]> created;
+    private Future<byte[]> initialized;
+    private String name;
+}
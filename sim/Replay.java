@@ -0,0 +1,241 @@
+package gunslinger.sim;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// A recorded game, read from a memory mapped replay file
+// Nothing of the players is needed to read or replay it
+//
+// File format, big endian:
+//  int    magic "GSRP"
+//  byte   version
+//  byte   bytes per player id, 2 or 4
+//  long   game seed
+//  int    number of players n
+//  int    number of rounds r
+//  n x    short length, UTF-8 bytes of the player's name
+//  n x    int count, count ids of the player's friends
+//  n x    int count, count ids of the player's enemies
+//  r x    n ids, the player each player shot in the round, -1 if none
+//
+public class Replay
+{
+    static final int MAGIC = 0x47535250;
+    static final byte VERSION = 1;
+    static final int ROUNDS_OFFSET = 18;
+
+    // map a replay file
+    //
+    public static Replay open(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private Replay(ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Not a replay file");
+        if (buffer.get() != VERSION)
+            throw new IOException("Unknown replay version");
+        width = buffer.get();
+        seed = buffer.getLong();
+        nplayers = buffer.getInt();
+        rounds = buffer.getInt();
+
+        names = new String[nplayers];
+        for (int p = 0; p != nplayers; ++p) {
+            byte[] bytes = new byte[buffer.getShort()];
+            buffer.get(bytes);
+            names[p] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        friendship = getLists();
+        enmityship = getLists();
+
+        actions = buffer.position();
+        if (buffer.limit() - actions < (long) rounds * nplayers * width)
+            throw new IOException("Truncated replay file");
+    }
+
+    private int[][] getLists()
+    {
+        int[][] lists = new int[nplayers][];
+        for (int p = 0; p != nplayers; ++p) {
+            lists[p] = new int[buffer.getInt()];
+            for (int i = 0; i != lists[p].length; ++i)
+                lists[p][i] = width == 2 ? buffer.getShort() : buffer.getInt();
+        }
+        return lists;
+    }
+
+    public long seed()
+    {
+        return seed;
+    }
+
+    public int nplayers()
+    {
+        return nplayers;
+    }
+
+    public int rounds()
+    {
+        return rounds;
+    }
+
+    public String name(int p)
+    {
+        return names[p];
+    }
+
+    public int[] friends(int p)
+    {
+        return friendship[p].clone();
+    }
+
+    public int[] enemies(int p)
+    {
+        return enmityship[p].clone();
+    }
+
+    // the player that player p shot in the given round, -1 if none
+    // rounds start at 1
+    //
+    public int action(int round, int p)
+    {
+        int at = actions + ((round - 1) * nplayers + p) * width;
+        return width == 2 ? buffer.getShort(at) : buffer.getInt(at);
+    }
+
+    // the status of every player at the end of the game
+    //
+    public boolean[] survivors()
+    {
+        boolean[] alive = new boolean[nplayers];
+        Arrays.fill(alive, true);
+        int[] bullets = new int[nplayers];
+
+        for (int r = 1; r <= rounds; ++r) {
+            Arrays.fill(bullets, 0);
+            for (int p = 0; p != nplayers; ++p) {
+                int target = action(r, p);
+                if (target >= 0)
+                    bullets[target]++;
+            }
+            for (int p = 0; p != nplayers; ++p)
+                if (bullets[p] > 1)
+                    alive[p] = false;
+        }
+        return alive;
+    }
+
+    // the final score of every player
+    //
+    public int[] scores()
+    {
+        boolean[] alive = survivors();
+        int[] scores = new int[nplayers];
+        for (int p = 0; p != nplayers; ++p) {
+            if (alive[p])
+                scores[p]++;
+            for (int f : friendship[p])
+                if (alive[f])
+                    scores[p]++;
+            for (int e : enmityship[p])
+                if (!alive[e])
+                    scores[p]++;
+        }
+        return scores;
+    }
+
+    // players that repeat the recorded shots
+    //
+    Player[] players()
+    {
+        Player.resetIds();
+        Player[] players = new Player[nplayers];
+        for (int p = 0; p != nplayers; ++p)
+            players[p] = new Recorded();
+        return players;
+    }
+
+    private class Recorded extends Player
+    {
+        public String name()
+        {
+            return names[id];
+        }
+
+        public void init(int nplayers, int[] friends, int[] enemies)
+        {
+        }
+
+        public int shoot(GameView view)
+        {
+            return view.round() <= rounds ? action(view.round(), id) : -1;
+        }
+    }
+
+    // Replay <file or directory> <gui>
+    //  a file is summarized, or shown in the gui
+    //  a directory has every replay file in it summarized, one per line
+    //
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: java Replay <file or directory> <gui>");
+            System.exit(1);
+        }
+        Path path = Paths.get(args[0]);
+        boolean gui = args.length > 1 && Boolean.parseBoolean(args[1]);
+
+        if (gui) {
+            Gunslinger game = new Gunslinger(open(path));
+            game.init();
+            game.playgui();
+            return;
+        }
+
+        if (!Files.isDirectory(path)) {
+            summarize(path, open(path));
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + EXTENSION)) {
+            for (Path file : files)
+                summarize(file, open(file));
+        }
+    }
+
+    // print seed, rounds and scores of a replay
+    //
+    private static void summarize(Path file, Replay replay)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(file.getFileName()).append(" seed ").append(replay.seed())
+            .append(" players ").append(replay.nplayers())
+            .append(" rounds ").append(replay.rounds()).append(" scores");
+        for (int score : replay.scores())
+            sb.append(' ').append(score);
+        System.out.println(sb);
+    }
+
+    // extension of replay files
+    public static final String EXTENSION = ".gsr";
+
+    private final ByteBuffer buffer;
+    private final int width;
+    private final long seed;
+    private final int nplayers;
+    private final int rounds;
+    private final String[] names;
+    private final int[][] friendship;
+    private final int[][] enmityship;
+    // offset of the first round
+    private final int actions;
+}
@@ -0,0 +1,119 @@
+package gunslinger.sim;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Records a game into a binary replay file
+// See Replay for the file format
+//
+public class ReplayWriter implements GameListener
+{
+    // constructor, the file is created when the game starts
+    //
+    public ReplayWriter(Path path)
+    {
+        this.path = path;
+    }
+
+    public void gameStart(long seed, String[] names, int[][] friendship, int[][] enmityship)
+    {
+        nplayers = names.length;
+        wide = nplayers > Short.MAX_VALUE;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                       StandardOpenOption.TRUNCATE_EXISTING);
+
+            buffer.putInt(Replay.MAGIC);
+            buffer.put(Replay.VERSION);
+            buffer.put((byte) (wide ? 4 : 2));
+            buffer.putLong(seed);
+            buffer.putInt(nplayers);
+            // number of rounds, written at the end
+            buffer.putInt(0);
+
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                room(2 + bytes.length);
+                buffer.putShort((short) bytes.length);
+                buffer.put(bytes);
+            }
+            putLists(friendship);
+            putLists(enmityship);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void roundEnd(int round, int[] actions)
+    {
+        try {
+            putList(actions);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void gameEnd(int rounds, int[] scores)
+    {
+        try {
+            flush();
+            // fill in the number of rounds
+            ByteBuffer count = ByteBuffer.allocate(4);
+            count.putInt(rounds).flip();
+            channel.write(count, Replay.ROUNDS_OFFSET);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the relationship lists of every player, length first
+    //
+    private void putLists(int[][] lists) throws IOException
+    {
+        for (int[] list : lists) {
+            room(4);
+            buffer.putInt(list.length);
+            putList(list);
+        }
+    }
+
+    // a list of player ids, -1 for none
+    //
+    private void putList(int[] list) throws IOException
+    {
+        for (int i = 0; i != list.length; ++i) {
+            room(4);
+            if (wide)
+                buffer.putInt(list[i]);
+            else
+                buffer.putShort((short) list[i]);
+        }
+    }
+
+    // make room for the given number of bytes
+    //
+    private void room(int bytes) throws IOException
+    {
+        if (buffer.remaining() < bytes)
+            flush();
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private final Path path;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private FileChannel channel;
+    private int nplayers;
+    // ids take 4 bytes instead of 2
+    private boolean wide;
+}
@@ -0,0 +1,321 @@
+package gunslinger.sim;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+
+// The result file of a tournament and its checkpoint
+// Every game is appended to the result file as soon as it ends.
+// A checkpoint of the ranks is written next to it after each chunk of
+// games, a restarted tournament goes on from the last checkpoint
+//
+// Result file format, big endian:
+//  int    magic "GSRS"
+//  byte   version
+//  int    number of players n
+//  int    enemies per player
+//  int    friends per player
+//  long   master seed
+//  n x    short length, UTF-8 bytes of the player's name
+//  then for every game, in the order they end
+//  int    game index
+//  long   game seed
+//  n x    int score of the player
+//  n x    int rank of the player, 0 is the first
+//
+// Checkpoint file <result file>.ckpt:
+//  int    magic "GSCK"
+//  byte   version
+//  32 x   byte SHA-256 of the result file's header
+//  int    number of players n
+//  int    games played, all with an index below it
+//  long   length of the result file that holds them
+//  n x n  int ranks[i][r], as Tournament.play returns them
+//
+public class Results implements Closeable
+{
+    static final int MAGIC = 0x47535253;
+    static final int CHECKPOINT_MAGIC = 0x4753434b;
+    static final byte VERSION = 1;
+    static final byte CHECKPOINT_VERSION = 2;
+    static final String CHECKPOINT = ".ckpt";
+
+    // open the result file of a tournament
+    // a checkpoint of the same tournament is picked up,
+    // the file is cut back to the games it covers
+    // a file of another tournament is only started over when
+    // overwrite is set, the games in it would be lost
+    // a file started over loses its old checkpoint with it
+    //
+    public static Results open(Path path, String[] names, int nenemies, int nfriends, long seed,
+                               boolean overwrite) throws IOException
+    {
+        byte[] header = header(names, nenemies, nfriends, seed);
+        byte[] headerHash;
+        try {
+            headerHash = MessageDigest.getInstance("SHA-256").digest(header);
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        Path checkpoint = Paths.get(path + CHECKPOINT);
+
+        int games = 0;
+        int[][] ranks = new int[names.length][names.length];
+        long length = header.length;
+        boolean resume = false;
+
+        boolean same = Files.exists(path) && Arrays.equals(header, readHeader(path, header.length));
+        if (!same && !overwrite && Files.exists(path) && Files.size(path) > 0)
+            throw new IOException(path + " holds the games of another tournament (" + describe(path)
+                                  + "), run with the same settings or -Dgunslinger.overwrite=true to start it over");
+
+        if (same && Files.exists(checkpoint)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+                if (in.readInt() != CHECKPOINT_MAGIC || in.readByte() != CHECKPOINT_VERSION)
+                    throw new IOException("Not a checkpoint file: " + checkpoint);
+                byte[] hash = new byte[headerHash.length];
+                in.readFully(hash);
+                // a checkpoint left behind by another tournament of this file
+                if (Arrays.equals(hash, headerHash) && in.readInt() == names.length) {
+                    games = in.readInt();
+                    length = in.readLong();
+                    for (int i = 0; i != names.length; ++i)
+                        for (int r = 0; r != names.length; ++r)
+                            ranks[i][r] = in.readInt();
+                    if (Files.size(path) < length)
+                        throw new IOException("Result file is shorter than its checkpoint: " + path);
+                    resume = true;
+                }
+            }
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (resume)
+            // drop the games that ended after the checkpoint
+            channel.truncate(length);
+        else {
+            // the old checkpoint goes first, a crash must not pair it with the new header
+            Files.deleteIfExists(checkpoint);
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(header));
+            length = header.length;
+        }
+        channel.position(length);
+        return new Results(channel, checkpoint, headerHash, names.length, games, ranks);
+    }
+
+    private Results(FileChannel channel, Path checkpoint, byte[] headerHash, int nplayers, int games, int[][] ranks)
+    {
+        this.channel = channel;
+        this.checkpoint = checkpoint;
+        this.headerHash = headerHash;
+        this.nplayers = nplayers;
+        this.games = games;
+        this.ranks = ranks;
+    }
+
+    // the header of a result file
+    //
+    private static byte[] header(String[] names, int nenemies, int nfriends, long seed) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(names.length);
+        out.writeInt(nenemies);
+        out.writeInt(nfriends);
+        out.writeLong(seed);
+        for (String name : names) {
+            byte[] utf = name.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(utf.length);
+            out.write(utf);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readHeader(Path path, int length) throws IOException
+    {
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.readNBytes(length);
+        }
+    }
+
+    // the master seed of an existing result file, null if there is none
+    //
+    public static Long seed(Path path) throws IOException
+    {
+        if (!Files.exists(path))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION)
+                return null;
+            in.readInt();
+            in.readInt();
+            in.readInt();
+            return in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // the settings in the header of a result file, for messages
+    //
+    private static String describe(Path path) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION)
+                return "not a result file";
+            int n = in.readInt();
+            int nenemies = in.readInt();
+            int nfriends = in.readInt();
+            long seed = in.readLong();
+            return n + " players, " + nenemies + " enemies, " + nfriends + " friends, seed " + seed;
+        } catch (EOFException e) {
+            return "not a result file";
+        }
+    }
+
+    // games of the last checkpoint, the tournament goes on from here
+    //
+    public int games()
+    {
+        return games;
+    }
+
+    // ranks of the last checkpoint
+    //
+    public int[][] ranks()
+    {
+        return ranks;
+    }
+
+    // append a game that just ended
+    // workers call it at the same time
+    //
+    public synchronized void append(int game, long seed, int[] scores, int[] rank) throws IOException
+    {
+        if (buffer.remaining() < 12 + 8 * nplayers)
+            flush();
+        if (buffer.remaining() < 12 + 8 * nplayers) {
+            // a record larger than the buffer goes on its own
+            ByteBuffer record = ByteBuffer.allocate(12 + 8 * nplayers);
+            put(record, game, seed, scores, rank);
+            record.flip();
+            while (record.hasRemaining())
+                channel.write(record);
+        }
+        else
+            put(buffer, game, seed, scores, rank);
+    }
+
+    private static void put(ByteBuffer to, int game, long seed, int[] scores, int[] rank)
+    {
+        to.putInt(game);
+        to.putLong(seed);
+        for (int s : scores)
+            to.putInt(s);
+        for (int r : rank)
+            to.putInt(r);
+    }
+
+    // record that all games below the given index are in the file
+    // the checkpoint is replaced at once, a crash leaves the old or the new one
+    //
+    public synchronized void checkpoint(int games, int[][] ranks) throws IOException
+    {
+        flush();
+        channel.force(false);
+
+        Path temp = Paths.get(checkpoint + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeByte(CHECKPOINT_VERSION);
+            out.write(headerHash);
+            out.writeInt(nplayers);
+            out.writeInt(games);
+            out.writeLong(channel.position());
+            for (int i = 0; i != nplayers; ++i)
+                for (int r = 0; r != nplayers; ++r)
+                    out.writeInt(ranks[i][r]);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        this.games = games;
+        this.ranks = ranks;
+    }
+
+    public synchronized void close() throws IOException
+    {
+        flush();
+        channel.close();
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    // print a result file as text, one game per line
+    //
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 1) {
+            System.err.println("Usage: java Results <result file>");
+            System.exit(1);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(args[0]))))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION)
+                throw new IOException("Not a result file");
+            int n = in.readInt();
+            int nenemies = in.readInt();
+            int nfriends = in.readInt();
+            long seed = in.readLong();
+            System.out.println("# seed: " + seed + ", enemies/player: " + nenemies + ", friends/player: " + nfriends);
+
+            String[] names = new String[n];
+            for (int p = 0; p != n; ++p) {
+                byte[] utf = new byte[in.readShort()];
+                in.readFully(utf);
+                names[p] = new String(utf, StandardCharsets.UTF_8);
+            }
+            StringBuilder sb = new StringBuilder("game\tseed");
+            for (int p = 0; p != n; ++p)
+                sb.append("\tscore ").append(names[p]);
+            for (int p = 0; p != n; ++p)
+                sb.append("\trank ").append(names[p]);
+            System.out.println(sb);
+
+            while (true) {
+                int game;
+                try {
+                    game = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                sb.setLength(0);
+                sb.append(game).append('\t').append(in.readLong());
+                for (int i = 0; i != 2 * n; ++i)
+                    sb.append('\t').append(in.readInt());
+                System.out.println(sb);
+            }
+        }
+    }
+
+    private final FileChannel channel;
+    private final Path checkpoint;
+    private final byte[] headerHash;
+    private final int nplayers;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private int games;
+    private int[][] ranks;
+}
@@ -0,0 +1,77 @@
+package gunslinger.sim;
+
+// A bounded ring buffer of round snapshots
+// The simulation thread puts a frame after every round, the GUI reads
+// frames at its own pace and may step back over the ones still kept.
+// The simulation waits once it is too far ahead of the frame shown,
+// the GUI never waits for the simulation
+//
+class RoundBuffer
+{
+    // the game as it was at the end of a round
+    //
+    static class Frame
+    {
+        Frame(int round, boolean[] alive, int[] actions, int[] scores, boolean last)
+        {
+            this.round = round;
+            this.alive = alive;
+            this.actions = actions;
+            this.scores = scores;
+            this.last = last;
+        }
+
+        final int round;
+        final boolean[] alive;
+        // actions[i] is the player i shot, -1 if none, null before the first round
+        final int[] actions;
+        final int[] scores;
+        // the game is over after this round
+        final boolean last;
+    }
+
+    // constructor
+    //  capacity - number of frames kept
+    //  ahead - rounds the simulation may play beyond the frame shown
+    //
+    RoundBuffer(int capacity, int ahead)
+    {
+        frames = new Frame[capacity];
+        this.ahead = Math.min(ahead, capacity - 1);
+    }
+
+    // add the frame of the next round, the oldest one drops out
+    // waits while the simulation is too far ahead
+    //
+    synchronized void put(Frame frame) throws InterruptedException
+    {
+        while (frame.round - shown > ahead)
+            wait();
+        frames[frame.round % frames.length] = frame;
+        last = frame.round;
+    }
+
+    // the frame of a round, null if it is not played yet or no longer kept
+    //
+    synchronized Frame get(int round)
+    {
+        if (round < 0 || round > last || round <= last - frames.length)
+            return null;
+        return frames[round % frames.length];
+    }
+
+    // the GUI shows this round now, the simulation may go on from there
+    //
+    synchronized void show(int round)
+    {
+        shown = round;
+        notifyAll();
+    }
+
+    private final Frame[] frames;
+    private final int ahead;
+    // last round put
+    private int last = -1;
+    // round the GUI shows
+    private int shown = 0;
+}
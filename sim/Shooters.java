@@ -0,0 +1,44 @@
+package gunslinger.sim;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+
+// The threads that run players' shoot calls off the game thread
+// One virtual thread per call where the runtime has them (Java 21+),
+// otherwise a cached pool of daemon threads
+//
+final class Shooters
+{
+    private Shooters()
+    {
+    }
+
+    // the shared pool
+    //
+    static ExecutorService pool()
+    {
+        return Holder.POOL;
+    }
+
+    private static class Holder
+    {
+        static final ExecutorService POOL = create();
+    }
+
+    private static ExecutorService create()
+    {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // no virtual threads, threads that do not keep the JVM alive
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "shooter");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+    }
+}
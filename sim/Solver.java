@@ -0,0 +1,373 @@
+package gunslinger.sim;
+
+import java.util.*;
+
+// Exact expected scores of a small arena
+// Instead of sampling games, the solver walks every state the game can
+// reach from a setup of friends and enemies and weighs it by its
+// probability. A state is who is alive, what everybody shot in the
+// previous round and how many peaceful rounds have passed; what happens
+// from a state on does not depend on how the game got there, so every
+// state is solved once and kept in a transposition table.
+//
+// Every player must either be deterministic or declare its strategy,
+// see Player.isDeterministic and Player.declareStrategy. The game rules
+// are those of Gunslinger.playstep, players do not fail or run late.
+//
+// Each state goes through every combination of the players' choices,
+// so the work grows about as fast as choices^n. It is capped, an arena
+// that needs more gives up before it starts on a state; with the
+// default cap, arenas of about 5 randomly shooting players finish in
+// seconds, larger ones give up after about as long
+//
+public class Solver
+{
+    // most players a state of the table holds, the work cap usually
+    // stops far below
+    public static final int MAX_PLAYERS = 16;
+
+    // constructor
+    //  players - initialized players, ids 0..n-1
+    //  friendship, enmityship - the lists the players were initialized with
+    //
+    public Solver(Player[] players, int[][] friendship, int[][] enmityship)
+    {
+        if (players.length > MAX_PLAYERS)
+            throw new IllegalArgumentException("The solver takes up to " + MAX_PLAYERS + " players");
+        this.players = players;
+        this.friendship = friendship;
+        this.enmityship = enmityship;
+        this.nplayers = players.length;
+        this.terminal = new double[1 << nplayers][];
+    }
+
+    // give up after this many rounds, each combination of choices
+    // in a state is one round
+    //
+    public void setLimit(long limit)
+    {
+        this.limit = limit;
+    }
+
+    // number of states solved
+    //
+    public int states()
+    {
+        return table.size();
+    }
+
+    // number of rounds played through
+    //
+    public long rounds()
+    {
+        return work;
+    }
+
+    // expected final score of every player
+    //
+    public double[] solve()
+    {
+        int all = (1 << nplayers) - 1;
+        return value(all, null, 0, 1).clone();
+    }
+
+    // expected final scores from a state on
+    //  alive - bit p set if player p is alive
+    //  previous - the previous round, null before the first round
+    //  npeace - peaceful rounds so far
+    //  round - the round about to be played, what the players see
+    //
+    private double[] value(int alive, int[] previous, int npeace, int round)
+    {
+        // the game is over, no death could change the scores anymore
+        if (npeace >= 10 || (previous != null && !deathPossible(alive)))
+            return scores(alive);
+
+        Key key = new Key(alive, previous, npeace);
+        double[] known = table.get(key);
+        if (known != null)
+            return known;
+
+        // what every living player may do, with its odds
+        // every state has a view of its own, players may tell them apart
+        SolverView view = new SolverView(alive, previous, round);
+        int[][] choices = new int[nplayers][];
+        double[][] odds = new double[nplayers][];
+        for (int p = 0; p != nplayers; ++p)
+            strategy(p, view, choices, odds);
+
+        // the rounds of this state, before going through them
+        long rounds = 1;
+        for (int p = 0; p != nplayers; ++p) {
+            rounds *= choices[p].length;
+            if (rounds > limit - work)
+                throw new IllegalStateException("More than " + limit + " rounds after " + table.size()
+                                                + " states, the arena is too large to solve");
+        }
+        work += rounds;
+
+        double[] expected = new double[nplayers];
+        // buffers of this state's rounds, nothing keeps them
+        int[] actions = new int[nplayers];
+        int[] current = new int[nplayers];
+        int[] bullets = new int[nplayers];
+        combine(0, 1.0, alive, npeace, round, choices, odds, actions, current, bullets, expected);
+
+        table.put(key, expected);
+        return expected;
+    }
+
+    // go through every combination of the players' choices
+    //
+    private void combine(int p, double probability, int alive, int npeace, int round,
+                         int[][] choices, double[][] odds, int[] actions,
+                         int[] current, int[] bullets, double[] expected)
+    {
+        if (p == nplayers) {
+            // play the round as playstep does
+            Arrays.fill(bullets, 0);
+            for (int q = 0; q != nplayers; ++q) {
+                current[q] = valid(q, actions[q], alive) ? actions[q] : -1;
+                if (current[q] >= 0)
+                    bullets[current[q]]++;
+            }
+            int next = alive;
+            for (int q = 0; q != nplayers; ++q)
+                if ((alive & (1 << q)) != 0 && bullets[q] > 1)
+                    next &= ~(1 << q);
+
+            double[] after = value(next, current, next != alive ? 0 : npeace + 1, round + 1);
+            for (int q = 0; q != nplayers; ++q)
+                expected[q] += probability * after[q];
+            return;
+        }
+
+        for (int c = 0; c != choices[p].length; ++c) {
+            actions[p] = choices[p][c];
+            combine(p + 1, probability * odds[p][c], alive, npeace, round, choices, odds, actions,
+                    current, bullets, expected);
+        }
+    }
+
+    // the choices of player p and their odds in the current view
+    // dead players do not shoot
+    //
+    private void strategy(int p, SolverView view, int[][] choices, double[][] odds)
+    {
+        if (!view.alive(p)) {
+            choices[p] = new int[] {-1};
+            odds[p] = new double[] {1};
+            return;
+        }
+
+        Player player = players[p];
+        double[] declared = new double[nplayers + 1];
+        if (player.declareStrategy(view, declared)) {
+            int count = 0;
+            double total = 0;
+            for (double d : declared) {
+                if (d < 0)
+                    throw new IllegalStateException("Player " + p + " declares negative odds");
+                if (d > 0)
+                    count++;
+                total += d;
+            }
+            if (Math.abs(total - 1) > 1e-9)
+                throw new IllegalStateException("Player " + p + " declares odds that add up to " + total);
+
+            choices[p] = new int[count];
+            odds[p] = new double[count];
+            int c = 0;
+            for (int t = 0; t <= nplayers; ++t)
+                if (declared[t] > 0) {
+                    choices[p][c] = t == nplayers ? -1 : t;
+                    odds[p][c++] = declared[t];
+                }
+        }
+        else if (player.isDeterministic()) {
+            choices[p] = new int[] {player.shoot(view)};
+            odds[p] = new double[] {1};
+        }
+        else
+            throw new IllegalStateException("Player " + p + " (" + player.name() + ") is neither deterministic nor declares its strategy");
+    }
+
+    // is the shot of player p valid, as Gunslinger.validate tells
+    //
+    private boolean valid(int p, int target, int alive)
+    {
+        if (target < 0)
+            return false;
+        if (target == p || target >= nplayers)
+            return false;
+        return !(target > 0 && (alive & (1 << target)) == 0);
+    }
+
+    // as Gunslinger.deathPossible, nobody is out for a violation
+    //
+    private boolean deathPossible(int alive)
+    {
+        int nalive = Integer.bitCount(alive);
+        return nalive >= 3;
+    }
+
+    // the scores when the game ends with the given players alive
+    //
+    private double[] scores(int alive)
+    {
+        if (terminal[alive] != null)
+            return terminal[alive];
+
+        double[] scores = new double[nplayers];
+        for (int p = 0; p != nplayers; ++p) {
+            if ((alive & (1 << p)) != 0)
+                scores[p]++;
+            for (int f : friendship[p])
+                if ((alive & (1 << f)) != 0)
+                    scores[p]++;
+            for (int e : enmityship[p])
+                if ((alive & (1 << e)) == 0)
+                    scores[p]++;
+        }
+        terminal[alive] = scores;
+        return scores;
+    }
+
+    // a state of the transposition table
+    // previous ids take 5 bits each, -1 stored as 31
+    //
+    private static class Key
+    {
+        Key(int alive, int[] previous, int npeace)
+        {
+            head = alive | ((long) npeace << 16) | (previous == null ? 1L << 24 : 0);
+            if (previous != null)
+                for (int p = 0; p != previous.length; ++p) {
+                    long id = previous[p] & 31;
+                    if (p < 12)
+                        low |= id << (5 * p);
+                    else
+                        high |= id << (5 * (p - 12));
+                }
+        }
+
+        public boolean equals(Object o)
+        {
+            Key k = (Key) o;
+            return head == k.head && low == k.low && high == k.high;
+        }
+
+        public int hashCode()
+        {
+            return Long.hashCode(head * 31 + low * 0x9e3779b97f4a7c15L + high);
+        }
+
+        private final long head;
+        private long low;
+        private long high;
+    }
+
+    // the game as players see it in a state
+    //
+    private class SolverView implements GameView
+    {
+        SolverView(int alive, int[] previous, int round)
+        {
+            this.alive = alive;
+            this.previous = previous;
+            this.round = round;
+        }
+
+        public int nplayers()
+        {
+            return nplayers;
+        }
+
+        // the round in which the state was reached first, sibling
+        // states share it, strategies must not depend on it
+        public int round()
+        {
+            return round;
+        }
+
+        public boolean firstRound()
+        {
+            return previous == null;
+        }
+
+        public int previous(int i)
+        {
+            return previous == null ? -1 : previous[i];
+        }
+
+        public boolean alive(int i)
+        {
+            return (alive & (1 << i)) != 0;
+        }
+
+        private final int alive;
+        private final int[] previous;
+        private final int round;
+    }
+
+    // Solver <playerlist> <num of enemies> <num of friends> <seed>
+    // solves the arena of the game with the given seed
+    //
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length != 4) {
+            System.err.println("Usage: java Solver <playerlist> <num of enemies> <num of friends> <seed>");
+            System.exit(1);
+        }
+        int nenemies = Integer.parseInt(args[1]);
+        int nfriends = Integer.parseInt(args[2]);
+        long seed = Long.parseLong(args[3]);
+
+        Class<? extends Player>[] classes = Gunslinger.loadPlayers(args[0]);
+        if (classes == null)
+            System.exit(1);
+        Player[] players = Gunslinger.newPlayers(classes);
+        if (nenemies + nfriends >= players.length) {
+            System.err.println("[Error] Invalid parameters: e+f<N");
+            System.exit(1);
+        }
+
+        // the relationships and players of that game
+        Gunslinger game = new Gunslinger(nenemies, nfriends, players, seed);
+        game.setListener(new GameListener() {});
+        game.init();
+        int[][] friendship = new int[players.length][];
+        int[][] enmityship = new int[players.length][];
+        for (int p = 0; p != players.length; ++p) {
+            friendship[p] = game.friends(p);
+            enmityship[p] = game.enemies(p);
+        }
+
+        long start = System.nanoTime();
+        Solver solver = new Solver(players, friendship, enmityship);
+        double[] expected = null;
+        try {
+            expected = solver.solve();
+        } catch (IllegalStateException e) {
+            System.err.println("[Error] " + e.getMessage());
+            System.exit(1);
+        }
+        long ms = (System.nanoTime() - start) / 1000000;
+
+        System.out.println("##### Expected scores #####");
+        System.out.println("# seed: " + seed);
+        System.out.println("# states: " + solver.states() + ", rounds: " + solver.rounds() + " (" + ms + " ms)");
+        for (int p = 0; p != players.length; ++p)
+            System.out.printf("%8s %.6f%n", players[p].name(), expected[p]);
+    }
+
+    private final Player[] players;
+    private final int[][] friendship;
+    private final int[][] enmityship;
+    private final int nplayers;
+    private final Map<Key, double[]> table = new HashMap<Key, double[]>();
+    // final scores by the players alive at the end
+    private final double[][] terminal;
+    private long limit = 20000000;
+    private long work;
+}
@@ -0,0 +1,161 @@
+package gunslinger.sim;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Play tournaments over a grid of configurations in one process
+// Players are loaded once, every configuration reuses the classes
+// and the warmed up JIT. All configurations share the master seed,
+// so they are compared on the same stream of games
+//
+public class Sweep
+{
+    // Sweep <playerlist> <enemies> <friends> <subsets> <games> <threads> <seed>
+    //  enemies, friends - counts to try, separated by commas, a-b for a range
+    //  subsets - sets of players to try, separated by ';', each one lists
+    //            lines of the player list from 0, the same way as the counts,
+    //            "all" for all of them
+    //
+    public static void main(String[] args) throws Exception
+    {
+        String playerPath = "gunslinger/players.list";
+        int[] enemies = {1};
+        int[] friends = {1};
+        String subsets = "all";
+        int games = 1;
+        int threads = 1;
+        // a random master seed unless one is given
+        long seed = ThreadLocalRandom.current().nextLong();
+
+        try {
+            if (args.length > 0)
+                playerPath = args[0];
+            if (args.length > 1)
+                enemies = parseList(args[1]);
+            if (args.length > 2)
+                friends = parseList(args[2]);
+            if (args.length > 3)
+                subsets = args[3];
+            if (args.length > 4)
+                games = Integer.parseInt(args[4]);
+            if (args.length > 5)
+                threads = Integer.parseInt(args[5]);
+            if (args.length > 6)
+                seed = Long.parseLong(args[6]);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Usage: java Sweep <playerlist> <enemies> <friends> <subsets> <games> <threads> <seed>");
+            System.exit(1);
+        }
+
+        // nobody is there to step through the games
+        Gunslinger.trace = false;
+
+        // load all the players, once
+        Class<? extends Player>[] all = Gunslinger.loadPlayers(playerPath);
+        if (all == null)
+            System.exit(1);
+
+        List<int[]> sets = new ArrayList<int[]>();
+        for (String subset : subsets.split(";")) {
+            if (subset.trim().equals("all")) {
+                int[] everybody = new int[all.length];
+                for (int p = 0; p != all.length; ++p)
+                    everybody[p] = p;
+                sets.add(everybody);
+                continue;
+            }
+
+            int[] set = null;
+            try {
+                set = parseList(subset);
+            } catch (NumberFormatException e) {
+            }
+            boolean valid = set != null && set.length > 0;
+            for (int p = 0; valid && p != set.length; ++p)
+                valid = set[p] >= 0 && set[p] < all.length;
+            if (!valid) {
+                System.err.println("[Error] Invalid subset \"" + subset + "\": lines 0 to " + (all.length - 1) + " of " + playerPath);
+                System.exit(1);
+            }
+            sets.add(set);
+        }
+        System.err.println("Master seed: " + seed);
+
+        StringBuilder report = new StringBuilder();
+        report.append("##### Sweep #####\n");
+        report.append("# seed: " + seed + "\n");
+        report.append("# games/configuration: " + games + "\n");
+
+        for (int[] set : sets) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Class<? extends Player>[] classes = new Class[set.length];
+            for (int i = 0; i != set.length; ++i)
+                classes[i] = all[set[i]];
+            Player[] players = Gunslinger.newPlayers(classes);
+
+            for (int e : enemies)
+                for (int f : friends) {
+                    String config = "enemies " + e + ", friends " + f + ", players " + Arrays.toString(set);
+                    if (e + f >= players.length) {
+                        report.append("## " + config + ": skipped, e+f<N\n");
+                        continue;
+                    }
+                    System.err.println("# " + config);
+
+                    Tournament tournament = new Tournament(classes, e, f);
+                    tournament.setQuiet(true);
+                    long start = System.nanoTime();
+                    int[][] ranks = tournament.play(games, threads, seed);
+                    long ms = (System.nanoTime() - start) / 1000000;
+
+                    report.append("## " + config + " (" + ms + " ms)\n");
+                    appendRanks(report, players, ranks);
+                }
+        }
+
+        System.out.print(report);
+    }
+
+    // the ranks of one configuration, as Gunslinger prints them,
+    // with the mean rank of each player in front
+    //
+    private static void appendRanks(StringBuilder sb, Player[] players, int[][] ranks)
+    {
+        sb.append(String.format("%8s %6s ", " ", "mean"));
+        for (int i = 1; i <= ranks.length; ++i)
+            sb.append(String.format("%3d ", i));
+        sb.append("\n");
+
+        for (int i = 0; i != ranks.length; ++i) {
+            sb.append(String.format("%8s %6.3f ", players[i].name(), Tournament.rankMean(ranks[i]) + 1));
+            for (int j = 0; j != ranks.length; ++j)
+                sb.append(String.format("%3d ", ranks[i][j]));
+            sb.append("\n");
+        }
+    }
+
+    // numbers separated by commas, a-b for all numbers from a to b
+    //
+    private static int[] parseList(String list)
+    {
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (String item : list.split(",")) {
+            item = item.trim();
+            int dash = item.indexOf('-', 1);
+            if (dash < 0)
+                numbers.add(Integer.parseInt(item));
+            else {
+                int from = Integer.parseInt(item.substring(0, dash));
+                int to = Integer.parseInt(item.substring(dash + 1));
+                for (int i = from; i <= to; ++i)
+                    numbers.add(i);
+            }
+        }
+
+        int[] array = new int[numbers.size()];
+        for (int i = 0; i != array.length; ++i)
+            array[i] = numbers.get(i);
+        return array;
+    }
+}
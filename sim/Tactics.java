@@ -0,0 +1,174 @@
+package gunslinger.sim;
+
+import java.util.Random;
+
+// Helpers for writing a strategy without allocating in shoot
+// Build one in init, it keeps the friends and enemies of a player as
+// bitsets and a few counters about the last round that it fills in
+// once per round. See dumb/Player.java for an example
+//
+public class Tactics
+{
+    // constructor
+    //  self - id of the player
+    //  nplayers - number of players
+    //  friends, enemies - as the player's init gets them
+    //
+    public Tactics(int self, int nplayers, int[] friends, int[] enemies)
+    {
+        this.self = self;
+        this.nplayers = nplayers;
+        this.friends = bits(nplayers, friends);
+        this.enemies = bits(nplayers, enemies);
+        hits = new int[nplayers];
+        hostile = new boolean[nplayers];
+    }
+
+    private static long[] bits(int nplayers, int[] ids)
+    {
+        long[] set = new long[(nplayers + 63) >>> 6];
+        for (int i : ids)
+            set[i >>> 6] |= 1L << i;
+        return set;
+    }
+
+    private static boolean has(long[] set, int i)
+    {
+        return (set[i >>> 6] & (1L << i)) != 0;
+    }
+
+    // is player i a friend?
+    //
+    public boolean isFriend(int i)
+    {
+        return has(friends, i);
+    }
+
+    // is player i an enemy?
+    //
+    public boolean isEnemy(int i)
+    {
+        return has(enemies, i);
+    }
+
+    // a random living player other than self, each equally likely
+    // Parameters:
+    //  view - the game
+    //  gen - random generator to draw from, one draw per call
+    //  friends - may friends be picked?
+    //  others - may players that are neither friends nor enemies be picked?
+    // Return:
+    //  int - the player picked, -1 if there is nobody to pick
+    //
+    public int randomTarget(GameView view, Random gen, boolean friends, boolean others)
+    {
+        // count the candidates, then walk to the chosen one
+        int count = 0;
+        for (int i = 0; i != nplayers; ++i)
+            if (candidate(view, i, friends, others))
+                count++;
+        if (count == 0)
+            return -1;
+
+        int pick = gen.nextInt(count);
+        for (int i = 0; i != nplayers; ++i)
+            if (candidate(view, i, friends, others) && pick-- == 0)
+                return i;
+        return -1;
+    }
+
+    // a random living player that is not a friend
+    //
+    public int randomTarget(GameView view, Random gen)
+    {
+        return randomTarget(view, gen, false, true);
+    }
+
+    private boolean candidate(GameView view, int i, boolean friends, boolean others)
+    {
+        if (i == self || !view.alive(i))
+            return false;
+        if (isFriend(i))
+            return friends;
+        return isEnemy(i) || others;
+    }
+
+    // number of players that shot player i in the previous round
+    //
+    public int hits(GameView view, int i)
+    {
+        count(view);
+        return hits[i];
+    }
+
+    // did player i shoot self or a friend in the previous round?
+    //
+    public boolean hostile(GameView view, int i)
+    {
+        count(view);
+        return hostile[i];
+    }
+
+    // number of living players that shot self or a friend in the previous round
+    //
+    public int threat(GameView view)
+    {
+        count(view);
+        return threat;
+    }
+
+    // the player that shot self in the previous round and has the lowest id,
+    // -1 if nobody did
+    //
+    public int firstAttacker(GameView view)
+    {
+        if (view.firstRound())
+            return -1;
+        for (int i = 0; i != nplayers; ++i)
+            if (view.previous(i) == self && view.alive(i))
+                return i;
+        return -1;
+    }
+
+    // fill in the counters of this round, once
+    // a view stands for one game, another view is another game
+    //
+    private void count(GameView view)
+    {
+        if (countedView == view && counted == view.round())
+            return;
+        countedView = view;
+        counted = view.round();
+
+        threat = 0;
+        for (int i = 0; i != nplayers; ++i) {
+            hits[i] = 0;
+            hostile[i] = false;
+        }
+        if (view.firstRound())
+            return;
+
+        for (int i = 0; i != nplayers; ++i) {
+            int target = view.previous(i);
+            if (target < 0)
+                continue;
+            hits[target]++;
+            if (target == self || isFriend(target)) {
+                hostile[i] = true;
+                if (view.alive(i))
+                    threat++;
+            }
+        }
+    }
+
+    private final int self;
+    private final int nplayers;
+    private final long[] friends;
+    private final long[] enemies;
+    // counters about the previous round, valid in round counted of countedView
+    private GameView countedView;
+    private final int[] hits;
+    private final boolean[] hostile;
+    private int threat;
+    private int counted = -1;
+}
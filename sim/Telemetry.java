@@ -0,0 +1,201 @@
+package gunslinger.sim;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import jdk.jfr.*;
+
+// Timing of the simulator phases
+// Every phase is a JFR event, seen by any flight recording that enables
+// the Gunslinger category. With -Dgunslinger.stats=<file> set, phases and
+// each player's shoot latency are also counted and summarized as JSON
+// at the end of the run, "-" writes the summary to stdout.
+//
+final class Telemetry
+{
+    private Telemetry()
+    {
+    }
+
+    // count and time phases?
+    static final boolean STATS = System.getProperty("gunslinger.stats") != null;
+
+    // Phases of a run
+    //
+    enum Phase
+    {
+        LOAD,       // compiling and loading players
+        INIT,       // setting up a game
+        RELATIONS,  // generating friends and enemies
+        ROUND,      // a round of playstep
+        SHOOT,      // a player's shoot
+        RANK,       // ranking a game, scores are kept up to date in play
+        TOURNAMENT  // all games
+    }
+
+    // start timing, a no-op unless STATS
+    //
+    static long start()
+    {
+        return STATS ? System.nanoTime() : 0;
+    }
+
+    // record the time since start for a phase
+    //
+    static void stop(Phase phase, long start)
+    {
+        if (STATS)
+            phases[phase.ordinal()].add(System.nanoTime() - start);
+    }
+
+    // record a shoot of the player in the given slot
+    //
+    static void stopShoot(int slot, long start)
+    {
+        if (STATS) {
+            long nanos = System.nanoTime() - start;
+            phases[Phase.SHOOT.ordinal()].add(nanos);
+            slot(slot).add(nanos);
+        }
+    }
+
+    // machine readable summary of everything recorded
+    //  names - name of the player in each slot
+    //
+    static String summary(String[] names)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"phases\": {");
+        for (Phase phase : Phase.values()) {
+            sb.append(phase.ordinal() == 0 ? "\n" : ",\n");
+            sb.append("    \"").append(phase.name().toLowerCase()).append("\": ");
+            phases[phase.ordinal()].json(sb);
+        }
+        sb.append("\n  },\n  \"players\": [");
+        for (int p = 0; p != names.length; ++p) {
+            sb.append(p == 0 ? "\n" : ",\n");
+            sb.append("    {\"slot\": ").append(p).append(", \"name\": \"")
+                .append(names[p].replace("\\", "\\\\").replace("\"", "\\\"")).append("\", \"shoot\": ");
+            slot(p).json(sb);
+            sb.append('}');
+        }
+        sb.append("\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    private static Stat slot(int slot)
+    {
+        Stat stat = slots.get(slot);
+        if (stat == null) {
+            slots.putIfAbsent(slot, new Stat());
+            stat = slots.get(slot);
+        }
+        return stat;
+    }
+
+    // count, total and longest time of something
+    //
+    private static class Stat
+    {
+        void add(long nanos)
+        {
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        void json(StringBuilder sb)
+        {
+            long n = count.sum();
+            long t = total.sum();
+            sb.append("{\"count\": ").append(n)
+                .append(", \"total_ms\": ").append(String.format("%.3f", t / 1e6))
+                .append(", \"mean_us\": ").append(String.format("%.3f", n == 0 ? 0 : t / 1e3 / n))
+                .append(", \"max_us\": ").append(String.format("%.3f", max.get() / 1e3))
+                .append('}');
+        }
+
+        final LongAdder count = new LongAdder();
+        final LongAdder total = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    }
+
+    private static final Stat[] phases = new Stat[Phase.values().length];
+    static {
+        for (int i = 0; i != phases.length; ++i)
+            phases[i] = new Stat();
+    }
+    private static final ConcurrentMap<Integer, Stat> slots = new ConcurrentHashMap<Integer, Stat>();
+
+    // JFR events
+
+    @Name("gunslinger.Load")
+    @Label("Load Players")
+    @Category("Gunslinger")
+    static class LoadEvent extends Event
+    {
+        @Label("Groups")
+        int groups;
+    }
+
+    @Name("gunslinger.GameInit")
+    @Label("Game Init")
+    @Category("Gunslinger")
+    static class InitEvent extends Event
+    {
+        @Label("Game Seed")
+        long seed;
+        @Label("Players")
+        int nplayers;
+    }
+
+    @Name("gunslinger.Relations")
+    @Label("Generate Relationships")
+    @Category("Gunslinger")
+    static class RelationsEvent extends Event
+    {
+        @Label("Players")
+        int nplayers;
+        @Label("Friends")
+        int nfriends;
+        @Label("Enemies")
+        int nenemies;
+    }
+
+    @Name("gunslinger.Round")
+    @Label("Round")
+    @Category("Gunslinger")
+    static class RoundEvent extends Event
+    {
+        @Label("Game Seed")
+        long seed;
+        @Label("Round")
+        int round;
+    }
+
+    @Name("gunslinger.Shoot")
+    @Label("Shoot")
+    @Category("Gunslinger")
+    static class ShootEvent extends Event
+    {
+        @Label("Player")
+        int player;
+        @Label("Name")
+        String name;
+        @Label("Round")
+        int round;
+        @Label("Target")
+        int target;
+    }
+
+    @Name("gunslinger.Rank")
+    @Label("Rank Game")
+    @Category("Gunslinger")
+    static class RankEvent extends Event
+    {
+        @Label("Game Seed")
+        long seed;
+        @Label("Players")
+        int nplayers;
+    }
+}
@@ -0,0 +1,298 @@
+package gunslinger.sim;
+
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A tournament of many games between the same player classes
+// Games run concurrently on a pool of worker threads,
+// each game with a fresh set of players
+//
+class Tournament
+{
+    // constructor
+    //
+    public Tournament(Class<? extends Player>[] classes, int nenemies, int nfriends)
+    {
+        this.classes = classes;
+        this.nenemies = nenemies;
+        this.nfriends = nfriends;
+        this.scoreSums = new AtomicLongArray(classes.length);
+    }
+
+    // write the log of every game to the given event log
+    // null for no log
+    //
+    public void setLog(EventLog log)
+    {
+        this.log = log;
+    }
+
+    // record a replay of every game into the given directory
+    // null for no replays
+    //
+    public void setReplayDir(String dir)
+    {
+        this.replayDir = dir;
+    }
+
+    // run the workers on the given pool instead of a pool of their own
+    // tournaments sharing a pool take turns on its threads
+    // null for a pool of its own
+    //
+    public void setPool(ExecutorService pool)
+    {
+        this.shared = pool;
+    }
+
+    // do not print the configuration and result of every game
+    // when there is no event log to print them to
+    //
+    public void setQuiet(boolean quiet)
+    {
+        this.quiet = quiet;
+    }
+
+    // append every game to the given result file and checkpoint it
+    // playUntil then goes on from the file's last checkpoint
+    // null for no result file
+    //
+    public void setResults(Results results)
+    {
+        this.results = results;
+    }
+
+    // the replay file of game g
+    //
+    public static Path replayPath(String dir, int g)
+    {
+        return Paths.get(dir, "game-" + g + Replay.EXTENSION);
+    }
+
+    // total score of every player over all games played so far
+    //
+    public long[] scoreSums()
+    {
+        long[] sums = new long[classes.length];
+        for (int i = 0; i != sums.length; ++i)
+            sums[i] = scoreSums.get(i);
+        return sums;
+    }
+
+    // seed of game g of a tournament
+    // it is the g-th value of the master seed's stream,
+    // so it does not depend on which worker plays the game
+    //
+    public static long gameSeed(long master, int g)
+    {
+        return new SplittableRandom(master + g * GOLDEN_GAMMA).nextLong();
+    }
+
+    // play the given number of games on nthreads workers
+    // Return:
+    //  int[][] - ranks[i][r] is the number of games player i finished at rank r
+    //
+    public int[][] play(int games, int nthreads, long seed) throws Exception
+    {
+        return play(0, games, nthreads, seed);
+    }
+
+    // play games from..to-1 on nthreads workers
+    // the results of a game only depend on its index,
+    // so splitting a tournament into parts does not change it
+    //
+    public int[][] play(int from, int to, int nthreads, long seed) throws Exception
+    {
+        AtomicInteger next = new AtomicInteger(from);
+        int games = to;
+
+        // single thread plays on the caller
+        // so that tracing from the console still works
+        if (nthreads <= 1 && shared == null)
+            return work(next, games, seed);
+
+        ExecutorService pool = shared != null ? shared : Executors.newFixedThreadPool(nthreads);
+        try {
+            List<Future<int[][]>> workers = new ArrayList<Future<int[][]>>();
+            for (int w = 0; w != nthreads; ++w)
+                workers.add(pool.submit(new Callable<int[][]>() {
+                        public int[][] call() throws Exception {
+                            return work(next, games, seed);
+                        }
+                    }));
+
+            // merge the per-worker buffers
+            int[][] ranks = new int[classes.length][classes.length];
+            for (Future<int[][]> worker : workers) {
+                int[][] part;
+                try {
+                    part = worker.get();
+                } catch (ExecutionException e) {
+                    // rethrow what the task threw, errors as they are
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    if (cause instanceof Exception)
+                        throw (Exception) cause;
+                    throw e;
+                }
+                for (int i = 0; i != ranks.length; ++i)
+                    for (int r = 0; r != ranks.length; ++r)
+                        ranks[i][r] += part[i][r];
+            }
+            return ranks;
+        } finally {
+            if (pool != shared)
+                pool.shutdownNow();
+        }
+    }
+
+    // play until the mean rank of every player is known to within width
+    // with 95% confidence, but no more than maxGames games
+    // a width of 0 plays all maxGames games
+    // games are played in chunks, after each one the result file is
+    // checkpointed and an estimate printed, naming players by names
+    // Return:
+    //  int[][] - the ranks, as play returns them
+    //
+    public int[][] playUntil(double width, int maxGames, int nthreads, long seed,
+                             String[] names, PrintStream progress) throws Exception
+    {
+        int n = classes.length;
+        int[][] ranks = new int[n][n];
+        int chunk = CHUNK * Math.max(1, nthreads);
+
+        int played = 0;
+        if (results != null && results.games() > 0) {
+            played = results.games();
+            for (int i = 0; i != n; ++i)
+                ranks[i] = results.ranks()[i].clone();
+            progress.println("# resuming after " + played + " games");
+        }
+
+        while (played < maxGames) {
+            int to = Math.min(maxGames, played + chunk);
+            int[][] part = play(played, to, nthreads, seed);
+            for (int i = 0; i != n; ++i)
+                for (int r = 0; r != n; ++r)
+                    ranks[i][r] += part[i][r];
+            played = to;
+            if (results != null)
+                results.checkpoint(played, ranks);
+
+            // the widest interval decides
+            int widest = 0;
+            double widestWidth = 0;
+            for (int i = 0; i != n; ++i) {
+                double w = 2 * Z95 * Math.sqrt(rankVariance(ranks[i]) / played);
+                if (w >= widestWidth) {
+                    widest = i;
+                    widestWidth = w;
+                }
+            }
+            progress.printf("# %d games, mean rank of %s %.3f +- %.3f%n", played,
+                            names[widest], rankMean(ranks[widest]) + 1, widestWidth / 2);
+
+            if (width > 0 && played >= MIN_GAMES && widestWidth <= width)
+                break;
+        }
+        return ranks;
+    }
+
+    // mean rank of a player, 0 based, from its row of the ranks matrix
+    //
+    static double rankMean(int[] counts)
+    {
+        long games = 0;
+        long sum = 0;
+        for (int r = 0; r != counts.length; ++r) {
+            games += counts[r];
+            sum += (long) r * counts[r];
+        }
+        return games == 0 ? 0 : (double) sum / games;
+    }
+
+    // sample variance of a player's rank from its row of the ranks matrix
+    //
+    static double rankVariance(int[] counts)
+    {
+        long games = 0;
+        for (int c : counts)
+            games += c;
+        if (games < 2)
+            return Double.POSITIVE_INFINITY;
+
+        double mean = rankMean(counts);
+        double squares = 0;
+        for (int r = 0; r != counts.length; ++r)
+            squares += counts[r] * (r - mean) * (r - mean);
+        return squares / (games - 1);
+    }
+
+    // keep taking games until all are played
+    // results go to a buffer private to this worker
+    //
+    private int[][] work(AtomicInteger next, int games, long seed) throws Exception
+    {
+        int[][] ranks = new int[classes.length][classes.length];
+
+        for (int g = next.getAndIncrement(); g < games; g = next.getAndIncrement()) {
+            // Create and initialize the game
+            Gunslinger game = new Gunslinger(nenemies, nfriends, Gunslinger.newPlayers(classes), gameSeed(seed, g));
+            GameListener listener = GameListener.of(log == null ? null : log.newGame(),
+                                                    replayDir == null ? null : new ReplayWriter(replayPath(replayDir, g)));
+            // a listener that takes the reports and drops them keeps them off stderr
+            if (quiet)
+                listener = GameListener.of(listener, new GameListener() {
+                        public boolean reports() {
+                            return true;
+                        }
+                    });
+            game.setListener(listener);
+            // nothing would show the report, do not build it
+            game.setReport(!quiet || log != null);
+            game.init();
+
+            game.printConfig();
+
+            game.play();
+
+            int[] rank = game.rank();
+            for (int i = 0; i != rank.length; ++i)
+                ranks[i][rank[i]]++;
+            game.release();
+
+            int[] scores = new int[rank.length];
+            for (int i = 0; i != rank.length; ++i) {
+                scores[i] = game.score(i);
+                scoreSums.addAndGet(i, scores[i]);
+            }
+            if (results != null)
+                results.append(g, gameSeed(seed, g), scores, rank);
+        }
+        return ranks;
+    }
+
+    // games per worker between two estimates of playUntil
+    private static final int CHUNK = 100;
+    // no estimate is trusted before this many games
+    private static final int MIN_GAMES = 30;
+    // two-sided 95% quantile of the normal distribution
+    private static final double Z95 = 1.959964;
+
+    // increment of java.util.SplittableRandom
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private Class<? extends Player>[] classes;
+    private int nenemies;
+    private int nfriends;
+    private EventLog log;
+    private String replayDir;
+    private Results results;
+    private boolean quiet;
+    private ExecutorService shared;
+    private final AtomicLongArray scoreSums;
+}